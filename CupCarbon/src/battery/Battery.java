@@ -182,6 +182,13 @@ public class Battery implements Cloneable {
 		this.uProc = uProc;
 	}
 
+	/**
+	 * @return the radio module connected to the battery
+	 */
+	public RadioModule getRadioModule() {
+		return radioModule;
+	}
+
 	/**
 	 * Connect to a Antanna
 	 * 
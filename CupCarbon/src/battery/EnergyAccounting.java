@@ -0,0 +1,111 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package battery;
+
+/**
+ * @version 1.0
+ *
+ *          Consumption of a set of batteries in fixed point : the drains are
+ *          integers in 1/scale of a unit of battery, added to a long[] (one
+ *          value by battery) and applied to the Battery objects by flush
+ *          (once by step). The part of a drain lower than one unit is kept
+ *          for the next flush, so the very small consumptions are not lost
+ *          by the long capacity of the batteries.
+ */
+public class EnergyAccounting {
+
+	// 10^-12 unit : the drain of a message of the MT simulation (8e-11 unit
+	// with a power ratio of 100) is 80
+	public static final long DEFAULT_SCALE = 1000000000000L;
+
+	private Battery[] batteries;
+	private long scale;
+	// Drains not yet applied (1/scale unit)
+	private long[] drain;
+
+	/**
+	 * @param batteries
+	 *            The batteries (their position is the index used by drain)
+	 */
+	public EnergyAccounting(Battery[] batteries) {
+		this(batteries, DEFAULT_SCALE);
+	}
+
+	/**
+	 * @param batteries
+	 *            The batteries (their position is the index used by drain)
+	 * @param scale
+	 *            Number of fixed point units in one unit of battery
+	 */
+	public EnergyAccounting(Battery[] batteries, long scale) {
+		if (scale <= 0)
+			throw new IllegalArgumentException("Wrong scale : " + scale);
+		this.batteries = batteries;
+		this.scale = scale;
+		drain = new long[batteries.length];
+	}
+
+	public long getScale() {
+		return scale;
+	}
+
+	/**
+	 * @param energy
+	 *            Energy in units of battery
+	 * @return the energy in fixed point (rounded)
+	 */
+	public long toFixed(double energy) {
+		return Math.round(energy * scale);
+	}
+
+	/**
+	 * Add a consumption to the battery i (applied by the next flush)
+	 * 
+	 * @param i
+	 * @param units
+	 *            Energy in fixed point (see toFixed)
+	 */
+	public void drain(int i, long units) {
+		drain[i] += units;
+	}
+
+	/**
+	 * @param i
+	 * @return the consumption of the battery i not yet applied (fixed point)
+	 */
+	public long getPending(int i) {
+		return drain[i];
+	}
+
+	/**
+	 * Apply the whole units of the drains to the batteries (the capacities do
+	 * not go under 0)
+	 */
+	public void flush() {
+		for (int i = 0; i < drain.length; i++) {
+			long units = drain[i] / scale;
+			if (units == 0)
+				continue;
+			drain[i] -= units * scale;
+			Battery battery = batteries[i];
+			battery.setCapacity(Math.max(0, battery.getCapacity() - units));
+		}
+	}
+}
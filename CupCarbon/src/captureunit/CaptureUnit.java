@@ -28,6 +28,7 @@ import utilities.MapCalc;
 import utilities.UColor;
 import consumer.AConsumption;
 import device.Device;
+import device.DeviceList;
 
 /**
  * @author Ahcene Bounceur
@@ -79,6 +80,8 @@ public class CaptureUnit extends AConsumption implements KeyListener, Cloneable
 	 */
 	public void setRadius(double radius) {
 		this.radius = radius;
+		if (node != null)
+			DeviceList.radiusChanged(node);
 	}
 
 	/**
@@ -126,6 +129,7 @@ public class CaptureUnit extends AConsumption implements KeyListener, Cloneable
 		if (node.isSelected()) {
 			if (key.getKeyChar() == ')') {
 				radius += 5;
+				DeviceList.radiusChanged(node);
 				Layer.getMapViewer().repaint();
 			}
 			if (key.getKeyChar() == '(') {
@@ -1165,6 +1165,9 @@ public class CupCarbon {
 	}
 
 	public static void updateInfos() {
+		// No window (headless simulation)
+		if (label == null)
+			return;
 		label.setText("" + DeviceList.size() + "  ");
 		sspeedLabel.setText("" + Device.moveSpeed + "  ");
 	}
@@ -0,0 +1,383 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package cupcarbon;
+
+import java.util.List;
+
+import map.Layer;
+
+import org.jdesktop.swingx.JXMapViewer;
+
+import project.Project;
+import radiomodule.PropagationModel;
+import radiomodule.PropagationModelType;
+import radiomodule.RadioModule;
+import simbox_simulation.CpuSimulation;
+import simbox_simulation.CpuSimulation2;
+import simbox_simulation.DepletionCpuSimulation;
+import simbox_simulation.GpuSimulation;
+import simbox_simulation.GpuSimulation2;
+import simbox_simulation.LinkMatrixType;
+import simbox_simulation.NetworkGenerator;
+import simbox_simulation.ParallelCpuSimulation;
+import simbox_simulation.ResultSinkType;
+import simbox_simulation.SimulationInputs;
+import simbox_simulation.SimulationContext;
+import simbox_simulation.SimulationListener;
+import simbox_simulation.SweepExecutor;
+import utilities.MapCalc;
+import wisen_simulation.WisenSimulation;
+import wisen_simulation2.Simulation;
+import wisen_simulation2.SimulationMode;
+import device.Device;
+import device.DeviceList;
+
+/**
+ * @version 1.0
+ *
+ *          Runs a simulation without window (compute nodes) :
+ *
+ *          java cupcarbon.HeadlessRunner projectDir project.cup engine
+ *          [options]
+ *
+ *          The engine is cpu, cpu2, parallel, wisen, gpu, gpu2, mt
+ *          (wisen_simulation2) or sweep (CpuSimulation for each energy and
+ *          each step of -energies and -steps, one JSON line by run). The
+ *          state and the progress are printed on the error output and, at
+ *          the end, one JSON line with the number of iterations done (events
+ *          for mt, all the runs for sweep) and the durations is printed on
+ *          the standard output. Exit code : 0 (done), 1 (error), 2 (wrong
+ *          arguments).
+ */
+public class HeadlessRunner {
+
+	public static final String[] ENGINES = { "cpu", "cpu2", "parallel",
+			"wisen", "gpu", "gpu2", "mt", "sweep" };
+
+	// ------------------------------------------------------------
+	// Prints the state (and the progress every 10%) on the error output
+	// ------------------------------------------------------------
+	public static final SimulationListener CONSOLE = new SimulationListener() {
+		private String state = "";
+		private int progress = -1;
+
+		@Override
+		public void stateChanged(String state) {
+			if (!state.equals(this.state)) {
+				this.state = state;
+				System.err.println(state);
+			}
+		}
+
+		@Override
+		public void progressChanged(int progress) {
+			if (progress / 100 != this.progress / 100) {
+				this.progress = progress;
+				System.err.println((progress / 10) + "%");
+			}
+		}
+
+		@Override
+		public void message(String message) {
+			System.err.println(message);
+		}
+	};
+
+	// MT simulation (wisen_simulation2)
+	private static long mtSimulationDelay = 360000000;
+	private static long mtLogicDelay = 60000;
+	private static long mtStep = 3600000;
+	private static boolean mtSequential = false;
+	private static boolean mtTextLog = true;
+
+	// Parameter sweep
+	private static int[] energies;
+	private static int[] steps;
+	private static boolean sweepResults = true;
+
+	public static void main(String[] args) {
+		if (args.length < 3 || !isEngine(args[2])) {
+			usage();
+			System.exit(2);
+		}
+		String engine = args[2];
+		try {
+			parseOptions(args, 3);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			System.exit(2);
+		}
+
+		try {
+			long t0 = System.nanoTime();
+			open(args[0], args[1]);
+			long t1 = System.nanoTime();
+			generate(engine);
+			long t2 = System.nanoTime();
+			long iterations = simulate(engine);
+			long t3 = System.nanoTime();
+			System.out.println("{\"engine\":\"" + engine + "\",\"sensors\":"
+					+ DeviceList.getNodes().size() + ",\"iterations\":"
+					+ iterations + ",\"loading_ms\":"
+					+ ms(t1 - t0) + ",\"generation_ms\":" + ms(t2 - t1)
+					+ ",\"simulation_ms\":" + ms(t3 - t2) + ",\"total_ms\":"
+					+ ms(t3 - t0) + "}");
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		// The device threads of the MT simulation are never ended
+		System.exit(0);
+	}
+
+	/**
+	 * Open a project without window
+	 *
+	 * @param path
+	 *            The directory of the project
+	 * @param name
+	 *            The .cup file of the project
+	 */
+	public static void open(String path, String name) {
+		System.setProperty("java.awt.headless", "true");
+		SimulationInputs.listener = CONSOLE;
+		new Layer(new JXMapViewer());
+		Project.openProject(path, name);
+	}
+
+	/**
+	 * Generate the links and the scripts of an engine (the MT simulation uses
+	 * directly the scripts of the devices)
+	 *
+	 * @param engine
+	 */
+	public static void generate(String engine) {
+		if (engine.equals("gpu") || engine.equals("gpu2"))
+			NetworkGenerator.generateForGpu();
+		else if (!engine.equals("mt"))
+			NetworkGenerator.generateForCpu();
+	}
+
+	/**
+	 * Run a simulation in the current thread (it returns at the end of the
+	 * simulation)
+	 *
+	 * @param engine
+	 * @return the number of iterations done (the events for mt, the
+	 *         iterations of all the runs for sweep)
+	 * @throws InterruptedException
+	 */
+	public static long simulate(String engine) throws InterruptedException {
+		if (engine.equals("sweep")) {
+			return sweep();
+		} else if (engine.equals("mt")) {
+			Simulation simulation = new Simulation("Headless", "log");
+			simulation.setListener(CONSOLE);
+			simulation.setSimulationDelay(mtSimulationDelay);
+			simulation.setSimulationLogicDelay(mtLogicDelay);
+			simulation.setStep(mtStep);
+			simulation.setTextLog(mtTextLog);
+			if (mtSequential)
+				simulation.setSimulationMode(SimulationMode.SEQUENTIALMODE);
+			simulation.startSimulation();
+			simulation.waitForEnd();
+			return simulation.getNbEvents();
+		} else if (engine.equals("cpu")) {
+			CpuSimulation simulation;
+			if (SimulationInputs.depletionEvents)
+				simulation = new DepletionCpuSimulation();
+			else
+				simulation = new CpuSimulation();
+			simulation.run();
+			return simulation.getIterations();
+		} else if (engine.equals("cpu2")) {
+			CpuSimulation2 simulation = new CpuSimulation2();
+			simulation.run();
+			return simulation.getIterations();
+		} else if (engine.equals("parallel")) {
+			ParallelCpuSimulation simulation = new ParallelCpuSimulation();
+			simulation.run();
+			return simulation.getIterations();
+		} else if (engine.equals("wisen")) {
+			WisenSimulation simulation = new WisenSimulation();
+			simulation.run();
+			return simulation.getIterations();
+		} else if (engine.equals("gpu")) {
+			GpuSimulation simulation = new GpuSimulation();
+			simulation.init();
+			simulation.run();
+			return simulation.getIterations();
+		} else if (engine.equals("gpu2")) {
+			GpuSimulation2 simulation = new GpuSimulation2();
+			simulation.init();
+			simulation.run();
+			return simulation.getIterations();
+		}
+		return 0;
+	}
+
+	// ------------------------------------------------------------
+	// The combinations of -energies and -steps on the same network,
+	// returns the iterations of all the runs
+	// ------------------------------------------------------------
+	private static long sweep() throws InterruptedException {
+		SimulationContext context = SimulationContext.fromInputs();
+		if (!sweepResults)
+			context = context.withResultsPath(null);
+		List<SimulationContext> contexts = SweepExecutor.variants(context,
+				(energies != null) ? energies
+						: new int[] { SimulationInputs.energyMax },
+				(steps != null) ? steps : new int[] { SimulationInputs.step });
+		SweepExecutor executor = new SweepExecutor();
+		executor.setListener(CONSOLE);
+		long iterations = 0;
+		for (SweepExecutor.Run run : executor.run(contexts)) {
+			iterations += run.getIterations();
+			if (run.getError() != null)
+				run.getError().printStackTrace();
+			System.out.println("{\"energy\":"
+					+ run.getContext().getEnergyMax() + ",\"step\":"
+					+ run.getContext().getStep() + ",\"iterations\":"
+					+ run.getIterations() + ",\"alive\":" + run.getNbAlive()
+					+ ",\"simulation_ms\":" + run.getDuration()
+					+ ",\"error\":" + (run.getError() != null) + "}");
+		}
+		return iterations;
+	}
+
+	public static boolean isEngine(String engine) {
+		for (String e : ENGINES)
+			if (e.equals(engine))
+				return true;
+		return false;
+	}
+
+	// ------------------------------------------------------------
+	// Options of the simulation (-name value)
+	// ------------------------------------------------------------
+	private static void parseOptions(String[] args, int from) {
+		for (int i = from; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-continuous")) {
+				SimulationInputs.discreteEvent = false;
+				continue;
+			}
+			if (option.equals("-mobility")) {
+				SimulationInputs.mobility = true;
+				continue;
+			}
+			if (option.equals("-fastForward")) {
+				SimulationInputs.fastForward = true;
+				continue;
+			}
+			if (option.equals("-depletion")) {
+				SimulationInputs.depletionEvents = true;
+				continue;
+			}
+			if (option.equals("-sequential")) {
+				mtSequential = true;
+				continue;
+			}
+			if (option.equals("-noTextLog")) {
+				mtTextLog = false;
+				continue;
+			}
+			if (option.equals("-planar")) {
+				MapCalc.setPlanar(true);
+				continue;
+			}
+			if (option.equals("-noResults")) {
+				sweepResults = false;
+				continue;
+			}
+			if (i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value : " + option);
+			String value = args[++i];
+			try {
+				if (option.equals("-iter"))
+					SimulationInputs.iterNumber = Integer.parseInt(value);
+				else if (option.equals("-energy"))
+					SimulationInputs.energyMax = Integer.parseInt(value);
+				else if (option.equals("-scriptSize"))
+					SimulationInputs.scriptSize = Integer.parseInt(value);
+				else if (option.equals("-step"))
+					SimulationInputs.step = Integer.parseInt(value);
+				else if (option.equals("-dataRate"))
+					Device.dataRate = Integer.parseInt(value);
+				else if (option.equals("-threads"))
+					SimulationInputs.nbThreads = Integer.parseInt(value);
+				else if (option.equals("-sampling"))
+					SimulationInputs.resultSampling = Integer.parseInt(value);
+				else if (option.equals("-propagation"))
+					RadioModule.setDefaultPropagationModel(PropagationModel
+							.newInstance(PropagationModelType.valueOf(value
+									.toUpperCase())));
+				else if (option.equals("-links"))
+					SimulationInputs.linkMatrixType = LinkMatrixType
+							.valueOf(value.toUpperCase());
+				else if (option.equals("-output"))
+					SimulationInputs.resultSinkType = ResultSinkType
+							.valueOf(value.toUpperCase());
+				else if (option.equals("-simDelay"))
+					mtSimulationDelay = Long.parseLong(value);
+				else if (option.equals("-logicDelay"))
+					mtLogicDelay = Long.parseLong(value);
+				else if (option.equals("-mtStep"))
+					mtStep = Long.parseLong(value);
+				else if (option.equals("-energies"))
+					energies = parseList(value);
+				else if (option.equals("-steps"))
+					steps = parseList(value);
+				else
+					throw new IllegalArgumentException("Unknown option : "
+							+ option);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Wrong value for " + option
+						+ " : " + value);
+			}
+		}
+	}
+
+	// a,b,c
+	private static int[] parseList(String value) {
+		String[] str = value.split(",");
+		int[] values = new int[str.length];
+		for (int i = 0; i < str.length; i++)
+			values[i] = Integer.parseInt(str[i].trim());
+		return values;
+	}
+
+	private static void usage() {
+		System.err.println("Usage : java cupcarbon.HeadlessRunner projectDir project.cup engine [options]");
+		System.err.println("  engine : cpu, cpu2, parallel, wisen, gpu, gpu2, mt, sweep");
+		System.err.println("  options : -iter n -energy n -scriptSize n -step n -dataRate n");
+		System.err.println("            -threads n -sampling k -links dense|sparse|bitset");
+		System.err.println("            -output csv|binary -mobility -continuous");
+		System.err.println("            -fastForward -depletion -planar");
+		System.err.println("  mt : -simDelay ms -logicDelay ms -mtStep ms -sequential -noTextLog");
+		System.err.println("       -propagation disc|log_distance|shadowing");
+		System.err.println("  sweep : -energies e1,e2,... -steps s1,s2,... -noResults");
+	}
+
+	private static long ms(long ns) {
+		return ns / 1000000;
+	}
+}
@@ -14,6 +14,7 @@ import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JInternalFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JSeparator;
@@ -22,6 +23,7 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
 
 import map.WorldMap;
+import simbox_simulation.SimulationListener;
 
 public class MtSimulationWindow extends JInternalFrame {
 
@@ -200,6 +202,23 @@ public class MtSimulationWindow extends JInternalFrame {
 
 	}
 
+	public static final SimulationListener LISTENER = new SimulationListener() {
+		@Override
+		public void stateChanged(String state) {
+			setState(state);
+		}
+
+		@Override
+		public void progressChanged(int progress) {
+			setProgress(progress);
+		}
+
+		@Override
+		public void message(String message) {
+			JOptionPane.showMessageDialog(null, message);
+		}
+	};
+
 	public static void setProgress(int v) {
 		progressBar.setValue(v);
 	}
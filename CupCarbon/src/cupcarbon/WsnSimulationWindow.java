@@ -17,6 +17,7 @@ import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JInternalFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
@@ -27,9 +28,12 @@ import javax.swing.border.EtchedBorder;
 import javax.swing.border.MatteBorder;
 
 import simbox_simulation.CpuSimulation;
+import simbox_simulation.DepletionCpuSimulation;
 import simbox_simulation.GpuSimulation;
 import simbox_simulation.NetworkGenerator;
+import simbox_simulation.ParallelCpuSimulation;
 import simbox_simulation.SimulationInputs;
+import simbox_simulation.SimulationListener;
 import wisen_simulation.WisenSimulation;
 import device.Device;
 
@@ -423,6 +427,23 @@ public class WsnSimulationWindow extends JInternalFrame {
 
 	}
 
+	public static final SimulationListener LISTENER = new SimulationListener() {
+		@Override
+		public void stateChanged(String state) {
+			setState(state);
+		}
+
+		@Override
+		public void progressChanged(int progress) {
+			setProgress(progress);
+		}
+
+		@Override
+		public void message(String message) {
+			JOptionPane.showMessageDialog(null, message);
+		}
+	};
+
 	public static void setProgress(int v) {
 		progressBar.setValue(v);
 	}
@@ -460,7 +481,12 @@ public class WsnSimulationWindow extends JInternalFrame {
 		}
 		if (v == 2 || v == 3) {
 			if (cpugpu == 1) {
-				cpuSimulation = new CpuSimulation();
+				if (SimulationInputs.depletionEvents)
+					cpuSimulation = new DepletionCpuSimulation();
+				else if (ParallelCpuSimulation.isWorthIt())
+					cpuSimulation = new ParallelCpuSimulation();
+				else
+					cpuSimulation = new CpuSimulation();
 				cpuSimulation.init();
 				cpuSimulation.start();
 			}
@@ -67,7 +67,7 @@ public class BaseStation extends DeviceWithRadio {
 	public void draw(Graphics g) {
 		if (visible) {
 			initDraw(g);
-			int [] coord = MapCalc.geoToIntPixelMapXY(this.x,this.y) ;
+			int [] coord = getPixel() ;
 			int x = coord[0];
 			int y = coord[1];
 			// int x = MapCalc.geoToIntPixelMapX(this.x, this.y);
@@ -33,6 +33,7 @@ import java.awt.geom.Point2D;
 import map.Layer;
 
 import org.jdesktop.swingx.mapviewer.GeoPosition;
+import org.jdesktop.swingx.mapviewer.TileFactory;
 
 import script.Script;
 import utilities.MapCalc;
@@ -80,6 +81,20 @@ public abstract class Device implements Runnable, MouseListener,
 	protected String userId = "";
 
 	protected double x, y;
+	// Position in the plane of MapCalc (meters), computed for the position
+	// (planeLatitude, planeLongitude) in the plane planeFrame
+	private double[] plane = new double[2];
+	private double planeLatitude = Double.NaN;
+	private double planeLongitude = Double.NaN;
+	private int planeFrame = -1;
+	// Pixel of the device on the map, computed for the position
+	// (pixelLatitude, pixelLongitude) at the zoom pixelZoom of the tile
+	// factory pixelFactory
+	private int[] pixel = new int[2];
+	private double pixelLatitude = Double.NaN;
+	private double pixelLongitude = Double.NaN;
+	private int pixelZoom = -1;
+	private TileFactory pixelFactory = null;
 	protected double xori;
 	protected double yori;
 	protected double dx, dy;
@@ -387,6 +402,7 @@ public abstract class Device implements Runnable, MouseListener,
 	 */
 	public void setX(double x) {
 		this.x = x;
+		DeviceList.moved(this);
 	}
 
 	/**
@@ -404,6 +420,7 @@ public abstract class Device implements Runnable, MouseListener,
 	 */
 	public void setY(double y) {
 		this.y = y;
+		DeviceList.moved(this);
 	}
 
 	/**
@@ -475,11 +492,61 @@ public abstract class Device implements Runnable, MouseListener,
 	 *         given as a parameter
 	 */
 	public double distance(Device device) {
+		if (MapCalc.isPlanar())
+			return Math.sqrt(squaredDistance(device));
 		double x2 = device.getX();
 		double y2 = device.getY();
 		return MapCalc.distance(x, y, x2, y2);
 	}
 
+	/**
+	 * @return the pixel of the device on the map (computed again only if the
+	 *         device has moved or the zoom has changed). The array is shared,
+	 *         it must not be changed.
+	 */
+	public int[] getPixel() {
+		int zoom = Layer.getMapViewer().getZoom();
+		TileFactory factory = Layer.getMapViewer().getTileFactory();
+		if (x != pixelLatitude || y != pixelLongitude || zoom != pixelZoom
+				|| factory != pixelFactory) {
+			int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+			pixel[0] = coord[0];
+			pixel[1] = coord[1];
+			pixelLatitude = x;
+			pixelLongitude = y;
+			pixelZoom = zoom;
+			pixelFactory = factory;
+		}
+		return pixel;
+	}
+
+	/**
+	 * @param device
+	 * @return the square of the distance in the plane of MapCalc (meters)
+	 */
+	public double squaredDistance(Device device) {
+		double[] p1 = getPlanePosition();
+		double[] p2 = device.getPlanePosition();
+		double dx = p1[0] - p2[0];
+		double dy = p1[1] - p2[1];
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * @return the east and north coordinates of the device in the plane of
+	 *         MapCalc (computed again only if the device has moved)
+	 */
+	public double[] getPlanePosition() {
+		if (x != planeLatitude || y != planeLongitude
+				|| planeFrame != MapCalc.getFrame()) {
+			MapCalc.toPlane(x, y, plane);
+			planeLatitude = x;
+			planeLongitude = y;
+			planeFrame = MapCalc.getFrame();
+		}
+		return plane;
+	}
+
 	/**
 	 * @param device
 	 * @return the horizontal distance in meters between the current design and
@@ -784,6 +851,7 @@ public abstract class Device implements Runnable, MouseListener,
 			thread.stop();
 			x = xori;
 			y = yori;
+			DeviceList.moved(this);
 		}		
 		thread = null;
 		underSimulation = false;
@@ -857,6 +925,7 @@ public abstract class Device implements Runnable, MouseListener,
 		if ((move && selected) && hide == 0) {
 			x = ex - dx;
 			y = ey - dy;
+			DeviceList.moved(this);
 			Layer.getMapViewer().repaint();
 		}
 
@@ -953,6 +1022,8 @@ public abstract class Device implements Runnable, MouseListener,
 			// double dMax = Math.max(MapCalc.rayonEnPixel(getRadioRadius()),
 			// MapCalc.rayonEnPixel(node.getRadioRadius()));
 			double dMax = Math.max(getRadioRadius(), device.getRadioRadius());
+			if (MapCalc.isPlanar())
+				return (dMax * dMax > squaredDistance(device));
 			return (dMax > (distance(device)));
 		}
 		return false;
@@ -976,6 +1047,8 @@ public abstract class Device implements Runnable, MouseListener,
 			// MapCalc.rayonEnPixel(getCaptureRadius())+MapCalc.rayonEnPixel(node.getCaptureRadius());
 			double dMax = getCaptureUnitRadius()
 					+ device.getCaptureUnitRadius();
+			if (MapCalc.isPlanar())
+				return (dMax * dMax > squaredDistance(device));
 			if (dMax > distance(device)) {
 				// setDetection(true);
 				return true;
@@ -1006,10 +1079,10 @@ public abstract class Device implements Runnable, MouseListener,
 	 */
 	public void drawRadioLink(Device device, Graphics g) {
 
-		int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+		int[] coord = getPixel();
 		int lx1 = coord[0];
 		int ly1 = coord[1];
-		coord = MapCalc.geoToIntPixelMapXY(device.getX(), device.getY());
+		coord = device.getPixel();
 		int lx2 = coord[0];
 		int ly2 = coord[1];
 
@@ -1030,10 +1103,10 @@ public abstract class Device implements Runnable, MouseListener,
 	 *            Graphics
 	 */
 	public void drawDetectionLink(Device device, Graphics g) {
-		int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+		int[] coord = getPixel();
 		int lx1 = coord[0];
 		int ly1 = coord[1];
-		coord = MapCalc.geoToIntPixelMapXY(device.getX(), device.getY());
+		coord = device.getPixel();
 		int lx2 = coord[0];
 		int ly2 = coord[1];
 
@@ -1078,7 +1151,7 @@ public abstract class Device implements Runnable, MouseListener,
 		int[] coord;
 		if (displayInfos && selected && infos != null) {
 			g.setFont(new Font("arial", 1, 10));
-			coord = MapCalc.geoToIntPixelMapXY(x, y);
+			coord = getPixel();
 			int lx1 = coord[0];
 			int ly1 = coord[1];
 			// int lx1 = MapCalc.geoToIntPixelMapX(x, y);
@@ -1198,6 +1271,7 @@ public abstract class Device implements Runnable, MouseListener,
 	public void toori() {
 		x = xori;
 		y = yori;
+		DeviceList.moved(this);
 	}
 	
 	public int getHide() {
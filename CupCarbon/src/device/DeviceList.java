@@ -28,15 +28,18 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import map.Layer;
 import solver.SensorGraph;
-import utilities.MapCalc;
 import flying_object.FlyingGroup;
 
 /**
@@ -53,6 +56,16 @@ public class DeviceList {
 	private boolean displayConnectionDistance = false;
 	private static int size = 0;
 	private LinkedList<Point[]> linksCoord = new LinkedList<Point[]>();
+	private static SpatialIndexType spatialIndexType = SpatialIndexType.GRID;
+	private static SpatialIndex spatialIndex = null;
+	private static Set<Device> movedNodes = Collections
+			.newSetFromMap(new IdentityHashMap<Device, Boolean>());
+	// Moved nodes of each watcher (watchMoves), forgotten with the watcher
+	private static List<WeakReference<Set<Device>>> watchers = new ArrayList<WeakReference<Set<Device>>>();
+	private static AtomicLong moves = new AtomicLong();
+	private static AtomicLong changes = new AtomicLong();
+	// Value of changes when the spatial index was built
+	private static long indexedChanges = -1;
 
 	/**
 	 * 
@@ -69,6 +82,130 @@ public class DeviceList {
 		return nodes;
 	}
 
+	/**
+	 * @return the spatial index of the nodes. The positions are updated when
+	 *         a node is moved (moved), the index is rebuilt when the list of
+	 *         the nodes has changed (changed).
+	 */
+	public static synchronized SpatialIndex getSpatialIndex() {
+		long c = changes.get();
+		if (spatialIndex == null || c != indexedChanges
+				|| spatialIndex.size() != nodes.size()) {
+			if (spatialIndex == null)
+				spatialIndex = SpatialIndex.newInstance(spatialIndexType);
+			indexedChanges = c;
+			spatialIndex.build(nodes);
+		}
+		return spatialIndex;
+	}
+
+	public static SpatialIndexType getSpatialIndexType() {
+		return spatialIndexType;
+	}
+
+	/**
+	 * @param type
+	 *            Grid or k-d tree
+	 */
+	public static synchronized void setSpatialIndexType(SpatialIndexType type) {
+		spatialIndexType = type;
+		spatialIndex = null;
+	}
+
+	/**
+	 * Called when a node has been moved to update the spatial index and the
+	 * sets of the moved nodes
+	 * 
+	 * @param node
+	 */
+	public static void moved(Device node) {
+		SpatialIndex index = spatialIndex;
+		if (index != null)
+			index.update(node);
+		synchronized (movedNodes) {
+			movedNodes.add(node);
+		}
+		synchronized (watchers) {
+			Iterator<WeakReference<Set<Device>>> iterator = watchers
+					.iterator();
+			while (iterator.hasNext()) {
+				Set<Device> set = iterator.next().get();
+				if (set == null)
+					iterator.remove();
+				else
+					set.add(node);
+			}
+		}
+		moves.incrementAndGet();
+	}
+
+	/**
+	 * A set of the moved nodes for one watcher (the shared set of
+	 * takeMovedNodes is not emptied). It is kept as long as the watcher keeps
+	 * it.
+	 * 
+	 * @return the set, to give to takeMovedNodes(set)
+	 */
+	public static Set<Device> watchMoves() {
+		Set<Device> set = Collections
+				.newSetFromMap(new IdentityHashMap<Device, Boolean>());
+		synchronized (watchers) {
+			watchers.add(new WeakReference<Set<Device>>(set));
+		}
+		return set;
+	}
+
+	/**
+	 * Called when the radio or the capture radius of a node has changed
+	 * 
+	 * @param node
+	 */
+	public static void radiusChanged(Device node) {
+		SpatialIndex index = spatialIndex;
+		if (index != null)
+			index.updateRadius(node);
+	}
+
+	/**
+	 * Called when nodes have been added or removed : the spatial index is
+	 * rebuilt at the next call of getSpatialIndex
+	 */
+	public static void changed() {
+		changes.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of moves of the nodes (it changes each time a node
+	 *         is moved)
+	 */
+	public static long getMoves() {
+		return moves.get();
+	}
+
+	/**
+	 * @return the nodes moved since the last call (the set is emptied)
+	 */
+	public static List<Device> takeMovedNodes() {
+		synchronized (movedNodes) {
+			List<Device> list = new ArrayList<Device>(movedNodes);
+			movedNodes.clear();
+			return list;
+		}
+	}
+
+	/**
+	 * @param set
+	 *            The set of a watcher (watchMoves)
+	 * @return the nodes moved since the last call (the set is emptied)
+	 */
+	public static List<Device> takeMovedNodes(Set<Device> set) {
+		synchronized (watchers) {
+			List<Device> list = new ArrayList<Device>(set);
+			set.clear();
+			return list;
+		}
+	}
+
 	/**
 	 * @param fileName
 	 */
@@ -217,6 +354,7 @@ public class DeviceList {
 	public static void add(Device node) {
 		nodes.add(node);
 		size++;
+		changed();
 	}
 
 	// public void drawDistance(int x, int y, int x2, int y2, int d, Graphics g)
@@ -235,8 +373,6 @@ public class DeviceList {
 		Device n1 = null;
 		Device n2 = null;
 
-		ListIterator<Device> iterator;
-		ListIterator<Device> iterator2;
 		try {
 //			if (drawLinks || linksDetection) {
 //				iterator = nodes.listIterator();
@@ -265,12 +401,15 @@ public class DeviceList {
 				}
 			}
 			if (drawLinks || linksDetection) {
-				iterator = nodes.listIterator();
-				while (iterator.hasNext() && iterator.nextIndex() < size - 1) {
-					n1 = iterator.next();
-					iterator2 = nodes.listIterator(iterator.nextIndex());
-					while (iterator2.hasNext()) {
-						n2 = iterator2.next();
+				SpatialIndex index = getSpatialIndex();
+				double range = Math.max(index.getRadioRange(),
+						index.getDetectionRange());
+				for (int i = 0; i < index.size() - 1; i++) {
+					n1 = index.getDevice(i);
+					for (int j : index.candidates(i, range)) {
+						if (j < i)
+							continue;
+						n2 = index.getDevice(j);
 						if (n1.radioDetect(n2) && drawLinks) {
 							n1.drawRadioLink(n2, g);
 							if (displayConnectionDistance) {
@@ -398,6 +537,7 @@ public class DeviceList {
 		Layer.getMapViewer().removeKeyListener(node);
 		nodes.remove(idx);
 		size--;
+		changed();
 		node = null;
 	}
 
@@ -460,6 +600,7 @@ public class DeviceList {
 				Layer.getMapViewer().removeKeyListener(node);
 				iterator.remove();
 				size--;
+				changed();
 				node = null;
 			}
 		}
@@ -568,13 +709,16 @@ public class DeviceList {
 				// iterator = nodes.listIterator();
 				// while (iterator.hasNext() && iterator.nextIndex() < size - 1)
 				// {
-				for (int i = 0; i < nodes.size() - 1; i++) {
-					n1 = nodes.get(i);
+				SpatialIndex index = getSpatialIndex();
+				for (int i = 0; i < index.size() - 1; i++) {
+					n1 = index.getDevice(i);
 					// n1 = iterator.next();
 					// iterator2 = nodes.listIterator(iterator.nextIndex());
 					// while (iterator2.hasNext()) {
-					for (int j = i + 1; j < nodes.size(); j++) {
-						n2 = nodes.get(j);
+					for (int j : index.candidates(i, index.getRadioRange())) {
+						if (j < i)
+							continue;
+						n2 = index.getDevice(j);
 						// n2 = iterator2.next();
 						if (n1.radioDetect(n2) && drawLinks) {
 
@@ -597,10 +741,10 @@ public class DeviceList {
 	}
 
 	public Point[] getCouple(Device n1, Device n2) {
-		int[] coord = MapCalc.geoToIntPixelMapXY(n1.getX(), n1.getY());
+		int[] coord = n1.getPixel();
 		int lx1 = coord[0];
 		int ly1 = coord[1];
-		coord = MapCalc.geoToIntPixelMapXY(n2.getX(), n2.getY());
+		coord = n2.getPixel();
 		int lx2 = coord[0];
 		int ly2 = coord[1];
 		// int lx1 = MapCalc.geoToIntPixelMapX(n1.getX(),n1.getY()) ;
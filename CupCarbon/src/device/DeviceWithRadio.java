@@ -112,6 +112,7 @@ public abstract class DeviceWithRadio extends DeviceWithWithoutRadio {
 	@Override
 	public void setRadioRadius(double radioRadius) {
 		this.radioRangeRadius = radioRadius ;
+		DeviceList.radiusChanged(this);
 	}
 	
 	/* (non-Javadoc)
@@ -174,6 +175,7 @@ public abstract class DeviceWithRadio extends DeviceWithWithoutRadio {
 		if (augmenterRadio) {			
 			radioRangeRadius += 30;
 			radioRangeRadiusOri += 30 ;
+			DeviceList.radiusChanged(this);
 			Layer.getMapViewer().repaint();
 		}
 		if (reduireRadio) {
@@ -199,6 +201,7 @@ public abstract class DeviceWithRadio extends DeviceWithWithoutRadio {
 				augmenterRadio = !augmenterRadio ;
 				radioRangeRadius+=5 ;
 				radioRangeRadiusOri+=5 ;
+				DeviceList.radiusChanged(this);
 				Layer.getMapViewer().repaint();
 			}
 			if(key.getKeyChar()=='-') {
@@ -262,7 +265,7 @@ public abstract class DeviceWithRadio extends DeviceWithWithoutRadio {
 	@Override
 	public void drawSelectedByAlgo(Graphics g) {		
 		if(selectedByAlgo) {	
-			int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+			int[] coord = getPixel();
 			int x = coord[0];
 			int y = coord[1];
 			//int x = MapCalc.geoToIntPixelMapX(x, y) ;
@@ -0,0 +1,132 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package device;
+
+import java.util.HashMap;
+
+/**
+ * @version 1.0
+ *
+ *          Spatial index based on a uniform grid. The width of a cell is the
+ *          highest radio radius (or capture diameter) of the devices, so the
+ *          neighbours of a device are in the 3x3 cells around it. Only the
+ *          non-empty cells are stored (hash map), and a move changes at most
+ *          two cells.
+ */
+public class GridSpatialIndex extends SpatialIndex {
+
+	// ------------------------------------------------------------
+	// A cell of the grid : positions of its devices
+	// ------------------------------------------------------------
+	static class Cell {
+		int[] items = new int[4];
+		int size = 0;
+
+		void add(int i) {
+			if (size == items.length) {
+				int[] tmp = new int[2 * size];
+				System.arraycopy(items, 0, tmp, 0, size);
+				items = tmp;
+			}
+			items[size++] = i;
+		}
+
+		void remove(int i) {
+			for (int k = 0; k < size; k++) {
+				if (items[k] == i) {
+					items[k] = items[--size];
+					return;
+				}
+			}
+		}
+	}
+
+	private HashMap<Long, Cell> cells = new HashMap<Long, Cell>();
+	private double cellSize = 1;
+
+	@Override
+	protected void buildStructure() {
+		cellSize = Math.max(1., Math.max(getRadioRange(), getDetectionRange()));
+		cells = new HashMap<Long, Cell>(Math.max(16, 2 * n));
+		for (int i = 0; i < n; i++)
+			getCell(px[i], py[i], true).add(i);
+	}
+
+	@Override
+	protected void moveStructure(int i, double oldX, double oldY) {
+		if (key(oldX, oldY) == key(px[i], py[i]))
+			return;
+		Cell cell = getCell(oldX, oldY, false);
+		if (cell != null) {
+			cell.remove(i);
+			if (cell.size == 0)
+				cells.remove(key(oldX, oldY));
+		}
+		getCell(px[i], py[i], true).add(i);
+	}
+
+	@Override
+	protected void query(int i, double x, double y, double range) {
+		long r = (long) Math.ceil(range / cellSize);
+		if ((2 * r + 1) * (2 * r + 1) > cells.size()) {
+			// Less cells than the neighbourhood : visit all of them
+			for (Cell cell : cells.values())
+				addCells(cell, i, x, y, range);
+			return;
+		}
+		long cx = (long) Math.floor(x / cellSize);
+		long cy = (long) Math.floor(y / cellSize);
+		for (long a = cx - r; a <= cx + r; a++) {
+			for (long b = cy - r; b <= cy + r; b++) {
+				Cell cell = cells.get(key(a, b));
+				if (cell != null)
+					addCells(cell, i, x, y, range);
+			}
+		}
+	}
+
+	private void addCells(Cell cell, int i, double x, double y, double range) {
+		for (int k = 0; k < cell.size; k++) {
+			int j = cell.items[k];
+			if (j != i && Math.abs(px[j] - x) <= range
+					&& Math.abs(py[j] - y) <= range)
+				addCandidate(j);
+		}
+	}
+
+	private Cell getCell(double x, double y, boolean create) {
+		long k = key(x, y);
+		Cell cell = cells.get(k);
+		if (cell == null && create) {
+			cell = new Cell();
+			cells.put(k, cell);
+		}
+		return cell;
+	}
+
+	private long key(double x, double y) {
+		return key((long) Math.floor(x / cellSize),
+				(long) Math.floor(y / cellSize));
+	}
+
+	private long key(long a, long b) {
+		return (a << 32) ^ (b & 0xffffffffL);
+	}
+}
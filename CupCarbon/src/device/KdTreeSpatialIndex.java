@@ -0,0 +1,151 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package device;
+
+/**
+ * @version 1.0
+ *
+ *          Spatial index based on a balanced 2-d tree (k-d tree), better than
+ *          the grid when the densities of the devices are very different (a
+ *          city and its surroundings). The tree is stored in an array (the
+ *          median of each sub-array is its root). The devices that move are
+ *          kept apart in a list tested linearly and the tree is rebuilt when
+ *          this list becomes larger than the square root of the number of
+ *          devices.
+ */
+public class KdTreeSpatialIndex extends SpatialIndex {
+
+	private int[] tree = new int[0];
+	private double[] treeX = new double[0];
+	private double[] treeY = new double[0];
+	private boolean[] moved = new boolean[0];
+	private int[] movedList = new int[0];
+	private int movedSize = 0;
+
+	@Override
+	protected void buildStructure() {
+		tree = new int[n];
+		treeX = new double[n];
+		treeY = new double[n];
+		moved = new boolean[n];
+		movedList = new int[16];
+		movedSize = 0;
+		for (int i = 0; i < n; i++)
+			tree[i] = i;
+		build(0, n, 0);
+		for (int k = 0; k < n; k++) {
+			treeX[k] = px[tree[k]];
+			treeY[k] = py[tree[k]];
+		}
+	}
+
+	@Override
+	protected void moveStructure(int i, double oldX, double oldY) {
+		if (moved[i])
+			return;
+		moved[i] = true;
+		if (movedSize == movedList.length) {
+			int[] tmp = new int[2 * movedSize];
+			System.arraycopy(movedList, 0, tmp, 0, movedSize);
+			movedList = tmp;
+		}
+		movedList[movedSize++] = i;
+		if (movedSize * movedSize > n)
+			buildStructure();
+	}
+
+	@Override
+	protected void query(int i, double x, double y, double range) {
+		query(0, n, 0, i, x, y, range);
+		for (int k = 0; k < movedSize; k++) {
+			int j = movedList[k];
+			if (j != i && Math.abs(px[j] - x) <= range
+					&& Math.abs(py[j] - y) <= range)
+				addCandidate(j);
+		}
+	}
+
+	private void query(int lo, int hi, int depth, int i, double x, double y,
+			double range) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int j = tree[mid];
+			double cx = treeX[mid];
+			double cy = treeY[mid];
+			if (j != i && !moved[j] && Math.abs(cx - x) <= range
+					&& Math.abs(cy - y) <= range)
+				addCandidate(j);
+			double d = (depth % 2 == 0) ? x - cx : y - cy;
+			if (d - range <= 0)
+				query(lo, mid, depth + 1, i, x, y, range);
+			if (d + range < 0)
+				return;
+			// Right side : loop instead of recursion
+			lo = mid + 1;
+			depth++;
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Place the median of tree[lo..hi[ (on the axis of the depth) in
+	// the middle, the lower values before it and the greater ones after
+	// ------------------------------------------------------------
+	private void build(int lo, int hi, int depth) {
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi - 1, mid, depth % 2 == 0);
+			build(lo, mid, depth + 1);
+			lo = mid + 1;
+			depth++;
+		}
+	}
+
+	private double coord(int k, boolean onX) {
+		return onX ? px[tree[k]] : py[tree[k]];
+	}
+
+	// Quickselect of the k-th element of tree[left..right]
+	private void select(int left, int right, int k, boolean onX) {
+		while (right > left) {
+			double pivot = coord((left + right) >>> 1, onX);
+			int a = left;
+			int b = right;
+			while (a <= b) {
+				while (coord(a, onX) < pivot)
+					a++;
+				while (coord(b, onX) > pivot)
+					b--;
+				if (a <= b) {
+					int tmp = tree[a];
+					tree[a] = tree[b];
+					tree[b] = tmp;
+					a++;
+					b--;
+				}
+			}
+			if (k <= b)
+				right = b;
+			else if (k >= a)
+				left = a;
+			else
+				return;
+		}
+	}
+}
@@ -43,7 +43,7 @@ public class Marker extends Device {
 	public void draw(Graphics g) {
 		if(visible) {
 			initDraw(g) ;
-			int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+			int[] coord = getPixel();
 			int x = coord[0];
 			int y = coord[1];
 			//int x = MapCalc.geoToIntPixelMapX(this.x,this.y) ;
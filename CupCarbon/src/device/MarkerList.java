@@ -40,7 +40,6 @@ import javax.swing.JOptionPane;
 
 import map.Layer;
 import project.Project;
-import utilities.MapCalc;
 
 public class MarkerList {
 
@@ -140,7 +139,7 @@ public class MarkerList {
 						firstTime = false;
 						x1 = marker.getX();
 						y1 = marker.getY();
-						coord = MapCalc.geoToIntPixelMapXY(x1, y1);
+						coord = marker.getPixel();
 						lx1 = coord[0];
 						ly1 = coord[1];								
 						//lx1 = MapCalc.geoToIntPixelMapX(x1, y1);
@@ -151,7 +150,7 @@ public class MarkerList {
 					} else {
 						x2 = marker.getX();
 						y2 = marker.getY();
-						coord = MapCalc.geoToIntPixelMapXY(x2, y2);
+						coord = marker.getPixel();
 						lx2 = coord[0];
 						ly2 = coord[1];
 						//lx2 = MapCalc.geoToIntPixelMapX(x2, y2);
@@ -176,7 +175,7 @@ public class MarkerList {
 						}
 						x1 = marker.getX();
 						y1 = marker.getY();
-						coord = MapCalc.geoToIntPixelMapXY(x1, y1);
+						coord = marker.getPixel();
 						lx1 = coord[0];
 						ly1 = coord[1];	
 						//lx1 = MapCalc.geoToIntPixelMapX(x1, y1);
@@ -102,6 +102,7 @@ public abstract class MobileG extends DeviceWithoutRadio {
 				tmpTime = cTime;
 				x = Double.parseDouble(ts[1]);
 				y = Double.parseDouble(ts[2]);
+				DeviceList.moved(this);
 				if (firstTime)
 					firstTime = false;
 				else {
@@ -150,6 +151,7 @@ public abstract class MobileG extends DeviceWithoutRadio {
 				ts = s.split(" ");
 				x = Double.parseDouble(ts[0]);
 				y = Double.parseDouble(ts[1]);
+				DeviceList.moved(this);
 				//x+=.0001;
 				//y-=.0001;
 				//SensorSetCover.sensorTargetSetCover() ;
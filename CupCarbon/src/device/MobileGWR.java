@@ -102,6 +102,7 @@ public abstract class MobileGWR extends DeviceWithRadio {
 				tmpTime = cTime;
 				x = Double.parseDouble(ts[1]);
 				y = Double.parseDouble(ts[2]);
+				DeviceList.moved(this);
 				if (firstTime)
 					firstTime = false;
 				else {
@@ -154,6 +155,7 @@ public abstract class MobileGWR extends DeviceWithRadio {
 				ts = s.split(" ");
 				x = Double.parseDouble(ts[0]);
 				y = Double.parseDouble(ts[1]);
+				DeviceList.moved(this);
 				if (firstTime)
 					firstTime = false;
 				else {
@@ -47,7 +47,7 @@ private static String idFL = "R" ; // ID First Letter
 	public void draw(Graphics g) {	
 		if(visible) {
 			initDraw(g) ;		
-			int [] coord = MapCalc.geoToIntPixelMapXY(this.x,this.y) ;
+			int [] coord = getPixel() ;
 			int x = coord[0];
 			int y = coord[1];
 			//int x = MapCalc.geoToIntPixelMapX(this.x,this.y) ;
@@ -197,7 +197,7 @@ public class Sensor extends DeviceWithRadio {
 		if (visible) {
 			initDraw(g);
 			// Layer.getMapViewer().setAlpha(100);
-			int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+			int[] coord = getPixel();
 			int x = coord[0];
 			int y = coord[1];
 			// int x = MapCalc.geoToIntPixelMapX(this.x, this.y);
@@ -356,6 +356,7 @@ public class Sensor extends DeviceWithRadio {
 				}
 				x = routeX.get(routeIndex);
 				y = routeY.get(routeIndex);
+				DeviceList.moved(this);
 				Layer.getMapViewer().repaint();
 				try {
 					Thread.sleep(toWait * Device.moveSpeed);
@@ -413,8 +414,13 @@ public class Sensor extends DeviceWithRadio {
 				}
 				
 			}
-			x = routeX.get(routeIndex);
-			y = routeY.get(routeIndex);
+			double newX = routeX.get(routeIndex);
+			double newY = routeY.get(routeIndex);
+			if (newX != x || newY != y) {
+				x = newX;
+				y = newY;
+				DeviceList.moved(this);
+			}
 		}
 		if (visual) {
 			try {
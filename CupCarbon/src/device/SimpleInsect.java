@@ -54,7 +54,7 @@ public class SimpleInsect extends MobileG {
 	public void draw(Graphics g) {
 		if(visible) {
 			initDraw(g) ;
-			int[] coord = MapCalc.geoToIntPixelMapXY(x, y);
+			int[] coord = getPixel();
 			int x = coord[0];
 			int y = coord[1];
 			//int x = MapCalc.geoToIntPixelMapX(this.x, this.y) ;
@@ -157,6 +157,7 @@ public class SimpleInsect extends MobileG {
 			radius = ro+(ro*d/100.);
 			x += .00002 ;
 			y -= .00002 ;
+			DeviceList.moved(this);
 			duree-- ;
 			Layer.getMapViewer().repaint();
 			try {
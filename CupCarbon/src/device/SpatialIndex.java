@@ -0,0 +1,266 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package device;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * @version 1.0
+ *
+ *          Spatial index over the positions of a list of devices. It gives,
+ *          for a device, the candidate neighbours that are at most at a given
+ *          distance (in meters), so that the all-pairs loops (radioDetect,
+ *          detection) only test the close devices.
+ *
+ *          The devices are identified by their position in the indexed list.
+ *          The coordinates (x: latitude, y: longitude) are projected on a
+ *          plane in meters (equirectangular projection with the cosine of
+ *          the highest latitude), which never over-estimates the distance of
+ *          MapCalc.distance, so the candidates are a superset of the real
+ *          neighbours. The exact test (radioDetect, detection) must still be
+ *          done by the caller.
+ *
+ *          Positions are updated incrementally when a device moves
+ *          (update, called by DeviceList.moved) and the radii when they
+ *          change (updateRadius), so a step only updates the moved devices.
+ *          The index is built again when the list of the devices changes.
+ */
+public abstract class SpatialIndex {
+
+	// Meters for one degree of latitude (sphere of 6378137 m as MapCalc)
+	public static final double METERS_PER_DEGREE = 6378137. * Math.PI / 180.;
+
+	// Margin for the approximations of the projection
+	protected static final double SLACK = 1.01;
+
+	// Margin (in degrees) on the highest latitude before a rebuild
+	protected static final double LATITUDE_MARGIN = 1.0;
+
+	protected Device[] devices = new Device[0];
+	protected double[] px = new double[0];
+	protected double[] py = new double[0];
+	protected double[] lat = new double[0];
+	protected double[] lon = new double[0];
+	protected int n = 0;
+	protected double maxLatitude = 0;
+	protected double cosRef = 1;
+	protected double maxRadioRadius = 0;
+	protected double maxCaptureRadius = 0;
+	protected IdentityHashMap<Device, Integer> positions = new IdentityHashMap<Device, Integer>();
+
+	private int[] result = new int[16];
+	private int resultSize = 0;
+
+	/**
+	 * @param type
+	 * @return a new (empty) spatial index of the given type
+	 */
+	public static SpatialIndex newInstance(SpatialIndexType type) {
+		if (type == SpatialIndexType.KD_TREE)
+			return new KdTreeSpatialIndex();
+		return new GridSpatialIndex();
+	}
+
+	/**
+	 * @param list
+	 * @return a new spatial index of the default type (grid) over the list
+	 */
+	public static SpatialIndex create(List<Device> list) {
+		SpatialIndex index = newInstance(SpatialIndexType.GRID);
+		index.build(list);
+		return index;
+	}
+
+	/**
+	 * Index the devices of the list
+	 *
+	 * @param list
+	 */
+	public synchronized void build(List<Device> list) {
+		n = list.size();
+		devices = list.toArray(new Device[n]);
+		px = new double[n];
+		py = new double[n];
+		lat = new double[n];
+		lon = new double[n];
+		positions.clear();
+		maxLatitude = 0;
+		maxRadioRadius = 0;
+		maxCaptureRadius = 0;
+		for (int i = 0; i < n; i++) {
+			Device device = devices[i];
+			positions.put(device, i);
+			lat[i] = device.getX();
+			lon[i] = device.getY();
+			maxLatitude = Math.max(maxLatitude, Math.abs(lat[i]));
+			updateRadius(device);
+		}
+		maxLatitude = Math.min(maxLatitude + LATITUDE_MARGIN, 89.);
+		cosRef = Math.cos(Math.toRadians(maxLatitude));
+		for (int i = 0; i < n; i++) {
+			px[i] = projectX(lat[i], lon[i]);
+			py[i] = projectY(lat[i], lon[i]);
+		}
+		buildStructure();
+	}
+
+	/**
+	 * Update the position of a device that has been moved
+	 *
+	 * @param device
+	 */
+	public synchronized void update(Device device) {
+		Integer p = positions.get(device);
+		if (p != null) {
+			updateRadius(device);
+			move(p);
+		}
+	}
+
+	/**
+	 * @param i
+	 *            Position of the device in the list
+	 * @param range
+	 *            Distance in meters
+	 * @return the positions (in increasing order) of the devices which can be
+	 *         at a distance lower than range from the device i (i excluded)
+	 */
+	public synchronized int[] candidates(int i, double range) {
+		resultSize = 0;
+		query(i, px[i], py[i], range * SLACK);
+		int[] r = Arrays.copyOf(result, resultSize);
+		Arrays.sort(r);
+		return r;
+	}
+
+	/**
+	 * @param device
+	 * @param range
+	 * @return the candidate neighbours of a device of the index
+	 */
+	public int[] candidates(Device device, double range) {
+		int i = indexOf(device);
+		if (i < 0)
+			return new int[0];
+		return candidates(i, range);
+	}
+
+	/**
+	 * @return the range to use with radioDetect
+	 */
+	public double getRadioRange() {
+		return maxRadioRadius;
+	}
+
+	/**
+	 * @return the range to use with detection
+	 */
+	public double getDetectionRange() {
+		return 2 * maxCaptureRadius;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public Device getDevice(int i) {
+		return devices[i];
+	}
+
+	/**
+	 * @param device
+	 * @return the position of the device in the index (-1 if not indexed)
+	 */
+	public synchronized int indexOf(Device device) {
+		Integer p = positions.get(device);
+		return (p == null) ? -1 : p;
+	}
+
+	// ------------------------------------------------------------
+	// Called by the query of the sub classes for each candidate
+	// ------------------------------------------------------------
+	protected void addCandidate(int j) {
+		if (resultSize == result.length)
+			result = Arrays.copyOf(result, 2 * result.length);
+		result[resultSize++] = j;
+	}
+
+	protected double projectX(double latitude, double longitude) {
+		return longitude * METERS_PER_DEGREE * cosRef;
+	}
+
+	protected double projectY(double latitude, double longitude) {
+		return latitude * METERS_PER_DEGREE;
+	}
+
+	/**
+	 * Take into account the radio and capture radius of a device (the ranges
+	 * of the queries only grow until the next build)
+	 *
+	 * @param device
+	 */
+	public synchronized void updateRadius(Device device) {
+		maxRadioRadius = Math.max(maxRadioRadius, device.getRadioRadius());
+		maxCaptureRadius = Math.max(maxCaptureRadius,
+				device.getCaptureUnitRadius());
+	}
+
+	// ------------------------------------------------------------
+	// Move the device i to its current position (if it has changed)
+	// ------------------------------------------------------------
+	private void move(int i) {
+		Device device = devices[i];
+		double x = device.getX();
+		double y = device.getY();
+		if (x == lat[i] && y == lon[i])
+			return;
+		lat[i] = x;
+		lon[i] = y;
+		if (Math.abs(x) > maxLatitude) {
+			// The projection is not valid anymore
+			build(Arrays.asList(devices));
+			return;
+		}
+		double oldX = px[i];
+		double oldY = py[i];
+		px[i] = projectX(x, y);
+		py[i] = projectY(x, y);
+		moveStructure(i, oldX, oldY);
+	}
+
+	/**
+	 * Build the structure from the projected positions px, py
+	 */
+	protected abstract void buildStructure();
+
+	/**
+	 * The device i has moved from (oldX, oldY) to (px[i], py[i])
+	 */
+	protected abstract void moveStructure(int i, double oldX, double oldY);
+
+	/**
+	 * Call addCandidate for each device j != i that can be at a distance
+	 * lower than range from (x, y)
+	 */
+	protected abstract void query(int i, double x, double y, double range);
+
+}
@@ -2,7 +2,7 @@
  * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
  * www.cupcarbon.com
  * ----------------------------------------------------------------------------------------------------------------
- * Copyright (C) 2014 Ahcene Bounceur
+ * Copyright (C) 2013 Ahcene Bounceur
  * ----------------------------------------------------------------------------------------------------------------
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,35 +17,9 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *----------------------------------------------------------------------------------------------------------------*/
 
-package wisen_simulation;
+package device;
 
-/**
- * @author Ahcene Bounceur
- * @author Kamal Mehdi
- * @version 1.0
- */
-public class WisenPong extends Thread {
-	
-	private WisenSemaphore wisenSemaphorePing = null;
-	private WisenSemaphore wisenSemaphorePong = null;
-	private WisenSimulation wisenSimulation = null;
-
-	public WisenPong(WisenSemaphore wisenSemaphorePing,
-			WisenSemaphore wisenSemaphorePong, WisenSimulation wisenSimulation) {
-		this.wisenSemaphorePing = wisenSemaphorePing;
-		this.wisenSemaphorePong = wisenSemaphorePong;
-		this.wisenSimulation = wisenSimulation;
-	}
-
-	@Override
-	public void run() {
-		boolean b=true;
-		while (b) {
-			wisenSemaphorePong.P();			
-			b = wisenSimulation.eventExecutor();
-			wisenSemaphorePing.V();			
-		}
-		wisenSemaphorePing.V();
-		wisenSemaphorePong.V();
-	}
+public enum SpatialIndexType {
+	GRID,
+	KD_TREE
 }
@@ -55,7 +55,7 @@ public class StreetVertex extends Device {
 		int[] coord;
 		if (visible) {
 			initDraw(g);
-			coord = MapCalc.geoToIntPixelMapXY(x, y);
+			coord = getPixel();
 			int x = coord[0];
 			int y = coord[1];
 			//int x = MapCalc.geoToIntPixelMapX(this.x, this.y);
@@ -64,7 +64,7 @@ public class StreetVertex extends Device {
 			int x2, y2;			
 
 			if (cNeighbor != null) {
-				coord = MapCalc.geoToIntPixelMapXY(cNeighbor.getX(), cNeighbor.getY());
+				coord = cNeighbor.getPixel();
 				x2 = coord[0];
 				y2 = coord[1];
 				//x2 = MapCalc.geoToIntPixelMapX(cNeighbor.getX(), cNeighbor.getY());
@@ -116,7 +116,7 @@ public class StreetVertex extends Device {
 			}
 			
 			for (StreetVertex sv : neighbors) {		
-				coord = MapCalc.geoToIntPixelMapXY(sv.getX(), sv.getY());
+				coord = sv.getPixel();
 				x2 = coord[0];
 				y2 = coord[1];				
 				//x2 = MapCalc.geoToIntPixelMapX(sv.getX(), sv.getY());
@@ -33,6 +33,7 @@ import map.Layer;
 
 import org.jdesktop.swingx.mapviewer.GeoPosition;
 
+import utilities.MapCalc;
 import cupcarbon.CupCarbon;
 import cupcarbon.Version;
 import device.DeviceList;
@@ -144,6 +145,7 @@ public final class Project {
 			double la = Double.valueOf(br.readLine().split(" ")[1]);
 			double lo = Double.valueOf(br.readLine().split(" ")[1]);
 			Layer.getMapViewer().setCenterPosition(new GeoPosition(la, lo));
+			MapCalc.setOrigin(la, lo);
 			br.close();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
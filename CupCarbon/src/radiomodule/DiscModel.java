@@ -2,7 +2,7 @@
  * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
  * www.cupcarbon.com
  * ----------------------------------------------------------------------------------------------------------------
- * Copyright (C) 2014 Ahcene Bounceur
+ * Copyright (C) 2013 Ahcene Bounceur
  * ----------------------------------------------------------------------------------------------------------------
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,41 +17,25 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *----------------------------------------------------------------------------------------------------------------*/
 
-package wisen_simulation;
+package radiomodule;
+
+import device.Device;
 
 /**
- * @author Ahcene Bounceur
- * @author Kamal Mehdi
  * @version 1.0
+ *
+ *          The model of radioDetect : the packets are always received in the
+ *          range and never out of it.
  */
-public class WisenSemaphore {
-
-	private boolean b = false;
-
-	public WisenSemaphore(boolean b) {
-		this.b = b;
-	}
+public class DiscModel extends PropagationModel {
 
-	public synchronized void P() {
-		boolean waitNonExe;
-		b = !b;
-		if (b) {
-			do {
-				waitNonExe = false;
-				try {
-					wait();
-				} catch (InterruptedException e) {
-					System.out.println("Oups : error");
-					waitNonExe = true;
-				}
-			} while (waitNonExe);
-		}
+	@Override
+	public double quality(Device sender, Device receiver) {
+		return (range(sender, receiver) > sender.distance(receiver)) ? 1 : 0;
 	}
 
-	public synchronized void V() {
-		b = !b;
-		if (!b) {
-			notify();
-		}
+	@Override
+	public double getMaxDistance(double range) {
+		return range;
 	}
 }
@@ -0,0 +1,243 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package radiomodule;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import device.Device;
+import device.DeviceList;
+import device.SpatialIndex;
+
+/**
+ * @version 1.0
+ *
+ *          The quality of the links (PropagationModel of the radio module of
+ *          the sender) between the devices of a list. Only the links with a
+ *          quality > 0 are kept : for each device, the positions (in
+ *          increasing order) of the devices it reaches and the qualities of
+ *          the links. They are computed once with a spatial index, so the
+ *          cost of the model is not paid by the simulation.
+ *
+ *          The table is updated when a device moves (DeviceList.moved) : the
+ *          links from the moved device are computed again, and the links to
+ *          it from its old and new neighbours. The table has its own set of
+ *          the moved devices (DeviceList.watchMoves), so an update only
+ *          visits them.
+ *
+ *          Used by a single thread (the simulation loop).
+ */
+public class LinkQualityTable {
+
+	private static final int[] NO_LINK = new int[0];
+	private static final float[] NO_QUALITY = new float[0];
+
+	private SpatialIndex index;
+	private PropagationModel[] models;
+	private double maxDistance;
+	private int[][] links;
+	private float[][] qualities;
+	// Positions of the devices when their links were computed
+	private double[] x;
+	private double[] y;
+	private long moves;
+	private Set<Device> moved;
+
+	/**
+	 * @param list
+	 *            The devices
+	 */
+	public LinkQualityTable(List<Device> list) {
+		moved = DeviceList.watchMoves();
+		moves = DeviceList.getMoves();
+		index = SpatialIndex.create(list);
+		int n = index.size();
+		models = new PropagationModel[n];
+		links = new int[n][];
+		qualities = new float[n][];
+		x = new double[n];
+		y = new double[n];
+		maxDistance = 0;
+		for (int i = 0; i < n; i++) {
+			Device device = index.getDevice(i);
+			x[i] = device.getX();
+			y[i] = device.getY();
+			models[i] = device.getBattery().getRadioModule()
+					.getPropagationModel();
+			maxDistance = Math.max(maxDistance,
+					models[i].getMaxDistance(index.getRadioRange()));
+		}
+		for (int i = 0; i < n; i++)
+			compute(i);
+	}
+
+	/**
+	 * @param device
+	 * @return the position of the device (its position in the list, -1 if
+	 *         it is not in the list)
+	 */
+	public int indexOf(Device device) {
+		return index.indexOf(device);
+	}
+
+	/**
+	 * @param j
+	 *            Position of a device
+	 * @return the device
+	 */
+	public Device getDevice(int j) {
+		return index.getDevice(j);
+	}
+
+	/**
+	 * @param i
+	 *            Position of a device
+	 * @return the positions (in increasing order) of the devices reached by
+	 *         the device i (itself excluded)
+	 */
+	public int[] getLinks(int i) {
+		update();
+		return links[i];
+	}
+
+	/**
+	 * @param i
+	 *            Position of a device
+	 * @return the qualities of the links of getLinks(i) (same order)
+	 */
+	public float[] getQualities(int i) {
+		update();
+		return qualities[i];
+	}
+
+	/**
+	 * @param sender
+	 * @param receiver
+	 * @return the quality of the link from sender to receiver (0 if there is
+	 *         no link)
+	 */
+	public double quality(Device sender, Device receiver) {
+		update();
+		int i = indexOf(sender);
+		int j = indexOf(receiver);
+		if (i < 0 || j < 0)
+			return 0;
+		int p = Arrays.binarySearch(links[i], j);
+		return (p < 0) ? 0 : qualities[i][p];
+	}
+
+	// ------------------------------------------------------------
+	// Quality of the link from i to j with the model of i
+	// ------------------------------------------------------------
+	private double quality(int i, int j) {
+		Device sender = index.getDevice(i);
+		Device receiver = index.getDevice(j);
+		if (!sender.withRadio() || !receiver.withRadio())
+			return 0;
+		return models[i].quality(sender, receiver);
+	}
+
+	// ------------------------------------------------------------
+	// The links from i
+	// ------------------------------------------------------------
+	private void compute(int i) {
+		int[] candidates = index.candidates(i, maxDistance);
+		float[] q = new float[candidates.length];
+		int k = 0;
+		for (int j : candidates) {
+			double quality = quality(i, j);
+			if (quality > 0) {
+				candidates[k] = j;
+				q[k++] = (float) quality;
+			}
+		}
+		links[i] = (k == 0) ? NO_LINK : Arrays.copyOf(candidates, k);
+		qualities[i] = (k == 0) ? NO_QUALITY : Arrays.copyOf(q, k);
+	}
+
+	// ------------------------------------------------------------
+	// Update the links of the devices that have moved and of their
+	// old and new neighbours
+	// ------------------------------------------------------------
+	private void update() {
+		if (DeviceList.getMoves() == moves)
+			return;
+		moves = DeviceList.getMoves();
+		List<Device> devices = DeviceList.takeMovedNodes(moved);
+		int[] positions = new int[devices.size()];
+		int nbMoved = 0;
+		// All the moved devices are placed in the index before the links are
+		// computed
+		for (Device device : devices) {
+			int i = index.indexOf(device);
+			if (i >= 0 && (device.getX() != x[i] || device.getY() != y[i])) {
+				x[i] = device.getX();
+				y[i] = device.getY();
+				index.update(device);
+				positions[nbMoved++] = i;
+			}
+		}
+		for (int k = 0; k < nbMoved; k++) {
+			int i = positions[k];
+			int[] old = links[i];
+			compute(i);
+			for (int j : old)
+				set(j, i, quality(j, i));
+			for (int j : links[i])
+				set(j, i, quality(j, i));
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Add, change or remove (quality 0) the link from i to j
+	// ------------------------------------------------------------
+	private void set(int i, int j, double quality) {
+		int[] l = links[i];
+		float[] q = qualities[i];
+		int p = Arrays.binarySearch(l, j);
+		if (p >= 0) {
+			if (quality > 0) {
+				q[p] = (float) quality;
+				return;
+			}
+			int[] nl = new int[l.length - 1];
+			float[] nq = new float[l.length - 1];
+			System.arraycopy(l, 0, nl, 0, p);
+			System.arraycopy(l, p + 1, nl, p, l.length - p - 1);
+			System.arraycopy(q, 0, nq, 0, p);
+			System.arraycopy(q, p + 1, nq, p, l.length - p - 1);
+			links[i] = nl;
+			qualities[i] = nq;
+		} else if (quality > 0) {
+			p = -p - 1;
+			int[] nl = new int[l.length + 1];
+			float[] nq = new float[l.length + 1];
+			System.arraycopy(l, 0, nl, 0, p);
+			System.arraycopy(l, p, nl, p + 1, l.length - p);
+			System.arraycopy(q, 0, nq, 0, p);
+			System.arraycopy(q, p, nq, p + 1, l.length - p);
+			nl[p] = j;
+			nq[p] = (float) quality;
+			links[i] = nl;
+			qualities[i] = nq;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package radiomodule;
+
+import device.Device;
+
+/**
+ * @version 1.0
+ *
+ *          Log-distance path loss : the signal to noise ratio (dB) decreases
+ *          with 10 * exponent * log10(distance). It is snrAtRange at the
+ *          nominal range of the link. The bit error rate is the one of a
+ *          non-coherent FSK (0.5 * exp(-snr / 2)) and the quality is the
+ *          probability to receive the frameSize bytes without error.
+ *
+ *          By default, the quality is 0.5 at the nominal range.
+ */
+public class LogDistanceModel extends PropagationModel {
+
+	private double exponent;
+	private int frameSize;
+	private double snrAtRange;
+
+	public LogDistanceModel() {
+		this(3, 50);
+	}
+
+	/**
+	 * @param exponent
+	 *            Path loss exponent (2 : free space, 3 to 4 : obstructed)
+	 * @param frameSize
+	 *            Size of a frame (bytes)
+	 */
+	public LogDistanceModel(double exponent, int frameSize) {
+		this.exponent = exponent;
+		this.frameSize = frameSize;
+		this.snrAtRange = snr(0.5);
+	}
+
+	public double getExponent() {
+		return exponent;
+	}
+
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	@Override
+	public double quality(Device sender, Device receiver) {
+		double range = range(sender, receiver);
+		if (range <= 0)
+			return 0;
+		double distance = Math.max(sender.distance(receiver), 1e-3);
+		double snr = snrAtRange + 10 * exponent * Math.log10(range / distance)
+				+ shadowing(sender, receiver);
+		double quality = prr(snr);
+		return (quality < MIN_QUALITY) ? 0 : quality;
+	}
+
+	@Override
+	public double getMaxDistance(double range) {
+		return range
+				* Math.pow(10, (snrAtRange - snr(MIN_QUALITY) + getMaxShadowing())
+						/ (10 * exponent));
+	}
+
+	/**
+	 * @param sender
+	 * @param receiver
+	 * @return the variation (dB) of the signal of the link (0 : no
+	 *         shadowing)
+	 */
+	protected double shadowing(Device sender, Device receiver) {
+		return 0;
+	}
+
+	/**
+	 * @return the largest value of shadowing (dB)
+	 */
+	protected double getMaxShadowing() {
+		return 0;
+	}
+
+	// ------------------------------------------------------------
+	// Packet reception ratio for a signal to noise ratio (dB)
+	// ------------------------------------------------------------
+	private double prr(double snr) {
+		double ber = 0.5 * Math.exp(-Math.pow(10, snr / 10) / 2);
+		return Math.pow(1 - ber, 8 * frameSize);
+	}
+
+	// ------------------------------------------------------------
+	// Signal to noise ratio (dB) of a packet reception ratio
+	// ------------------------------------------------------------
+	private double snr(double prr) {
+		double ber = 1 - Math.pow(prr, 1. / (8 * frameSize));
+		return 10 * Math.log10(-2 * Math.log(2 * ber));
+	}
+}
@@ -0,0 +1,78 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package radiomodule;
+
+import device.Device;
+
+/**
+ * @version 1.0
+ *
+ *          Model of the propagation of the radio : gives the quality of the
+ *          link between two devices, the probability that a packet sent by
+ *          the first one is received by the second one (packet reception
+ *          ratio, PRR). The nominal range of a link is the one of radioDetect
+ *          (the largest radio radius of the two devices).
+ *
+ *          The models are not changed once created, the same instance can be
+ *          used by several radio modules. The qualities are computed once by
+ *          LinkQualityTable, not during the simulation.
+ */
+public abstract class PropagationModel {
+
+	// A link with a lower quality does not exist
+	public static final double MIN_QUALITY = 0.01;
+
+	/**
+	 * @param type
+	 * @return a new model of the given type (default parameters)
+	 */
+	public static PropagationModel newInstance(PropagationModelType type) {
+		if (type == PropagationModelType.LOG_DISTANCE)
+			return new LogDistanceModel();
+		if (type == PropagationModelType.SHADOWING)
+			return new ShadowingModel();
+		return new DiscModel();
+	}
+
+	/**
+	 * @param sender
+	 * @param receiver
+	 * @return the quality of the link from sender to receiver in [0, 1] (0
+	 *         if it is lower than MIN_QUALITY)
+	 */
+	public abstract double quality(Device sender, Device receiver);
+
+	/**
+	 * @param range
+	 *            Nominal range (meters)
+	 * @return the distance (meters) from which the quality of a link of this
+	 *         range is 0
+	 */
+	public abstract double getMaxDistance(double range);
+
+	/**
+	 * @param sender
+	 * @param receiver
+	 * @return the nominal range of the link (meters)
+	 */
+	protected static double range(Device sender, Device receiver) {
+		return Math.max(sender.getRadioRadius(), receiver.getRadioRadius());
+	}
+}
@@ -29,11 +29,46 @@ import consumer.AConsumption;
  */
 public class RadioModule extends AConsumption {
 
+	// Model of the modules without their own model
+	private static PropagationModel defaultPropagationModel = new DiscModel();
+
 	private int type = RadioType.END_DEVICE ;
+	private PropagationModel propagationModel = null;
 	
 	public RadioModule(int type) {
 		this.type = type ;
 	}
+
+	/**
+	 * @return the propagation model of the module (the default one if it has
+	 *         none)
+	 */
+	public PropagationModel getPropagationModel() {
+		if (propagationModel == null)
+			return defaultPropagationModel;
+		return propagationModel;
+	}
+
+	/**
+	 * @param propagationModel
+	 *            The model of the module (null : the default one)
+	 */
+	public void setPropagationModel(PropagationModel propagationModel) {
+		this.propagationModel = propagationModel;
+	}
+
+	public static PropagationModel getDefaultPropagationModel() {
+		return defaultPropagationModel;
+	}
+
+	/**
+	 * @param model
+	 *            Model of the modules without their own model (disc by
+	 *            default)
+	 */
+	public static void setDefaultPropagationModel(PropagationModel model) {
+		defaultPropagationModel = model;
+	}
 	
 	/* (non-Javadoc)
 	 * @see consumer.AConsumption#getConsumedUnit()
@@ -0,0 +1,77 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package radiomodule;
+
+import java.util.Random;
+
+import device.Device;
+
+/**
+ * @version 1.0
+ *
+ *          Log-normal shadowing : the log-distance model plus a gaussian
+ *          variation (dB, standard deviation sigma) of each link, limited to
+ *          3 sigma. The variation only depends on the pair of devices (their
+ *          ids and the seed), so it is the same in both directions and from
+ *          one computation to the other.
+ */
+public class ShadowingModel extends LogDistanceModel {
+
+	private double sigma;
+	private long seed;
+
+	public ShadowingModel() {
+		this(3, 50, 4, 0);
+	}
+
+	/**
+	 * @param exponent
+	 *            Path loss exponent
+	 * @param frameSize
+	 *            Size of a frame (bytes)
+	 * @param sigma
+	 *            Standard deviation of the shadowing (dB)
+	 * @param seed
+	 */
+	public ShadowingModel(double exponent, int frameSize, double sigma,
+			long seed) {
+		super(exponent, frameSize);
+		this.sigma = sigma;
+		this.seed = seed;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	@Override
+	protected double shadowing(Device sender, Device receiver) {
+		long a = Math.min(sender.getId(), receiver.getId());
+		long b = Math.max(sender.getId(), receiver.getId());
+		Random random = new Random(seed ^ ((a << 32) | b));
+		double x = random.nextGaussian();
+		return sigma * Math.max(-3, Math.min(3, x));
+	}
+
+	@Override
+	protected double getMaxShadowing() {
+		return 3 * sigma;
+	}
+}
@@ -25,12 +25,14 @@ public final class CommandType {
 	public static final int PSEND = 1 ;
 	public static final int SEND = 2 ;
 	public static final int BREAK = 3 ;
+	public static final int UNKNOWN = 4 ;
 	
 	public static String getCommandName(int i) {
 		if(i==0) return "DELAY";
 		if(i==1) return "PSEND";
 		if(i==2) return "SEND";
 		if(i==3) return "BREAK";
+		if(i==4) return "UNKNOWN";
 		return "";
 	}
 	
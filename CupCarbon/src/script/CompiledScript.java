@@ -0,0 +1,98 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2014 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package script;
+
+import java.util.Arrays;
+
+/**
+ * @version 1.0
+ * 
+ *          A script compiled by ScriptCompiler : an int[] with 3 values by
+ *          instruction (the command of CommandType and its two arguments).
+ *          The compiled scripts are interned, the devices with the same
+ *          script share the same instance.
+ */
+public final class CompiledScript {
+
+	// Number of int by instruction
+	public static final int WIDTH = 3;
+
+	private final int[] code;
+
+	CompiledScript(int[] code) {
+		this.code = code;
+	}
+
+	/**
+	 * @return the number of instructions
+	 */
+	public int size() {
+		return code.length / WIDTH;
+	}
+
+	/**
+	 * @param k
+	 * @return the command of the instruction k (see CommandType)
+	 */
+	public int getCommand(int k) {
+		return code[k * WIDTH];
+	}
+
+	/**
+	 * @param k
+	 * @return the first argument of the instruction k (size of a psend,
+	 *         destination of a send, duration of a delay)
+	 */
+	public int getArg(int k) {
+		return code[k * WIDTH + 1];
+	}
+
+	/**
+	 * @param k
+	 * @return the second argument of the instruction k (power ratio of a
+	 *         send)
+	 */
+	public int getArg2(int k) {
+		return code[k * WIDTH + 2];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof CompiledScript)
+				&& Arrays.equals(code, ((CompiledScript) o).code);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(code);
+	}
+
+	@Override
+	public String toString() {
+		String s = "";
+		for (int k = 0; k < size(); k++) {
+			s += CommandType.getCommandName(getCommand(k)) + " " + getArg(k);
+			if (getCommand(k) == CommandType.SEND)
+				s += " " + getArg2(k);
+			s += "\n";
+		}
+		return s;
+	}
+}
@@ -0,0 +1,150 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2014 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package script;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * @version 1.0
+ * 
+ *          The only parser of the script files (.scr) : all the simulations
+ *          (SimBox CPU/GPU, WISEN, multithread) read the CompiledScript of a
+ *          file. A file is parsed once and kept in a cache until it is
+ *          modified, so the devices that share a script only parse it once.
+ *          The files with the same instructions share one CompiledScript; a
+ *          script that is no more in the cache (its file changed) and no more
+ *          used by a device is released by the garbage collector.
+ * 
+ *          One instruction by line (case is ignored) :
+ *          psend size | send destination ratio | delay duration | break.
+ *          The other lines are compiled as CommandType.UNKNOWN.
+ */
+public final class ScriptCompiler {
+
+	// ------------------------------------------------------------
+	// A compiled file and the state of the file when it was parsed
+	// ------------------------------------------------------------
+	private static class Entry {
+		private long lastModified;
+		private long length;
+		private CompiledScript script;
+	}
+
+	private static Map<String, Entry> cache = new HashMap<String, Entry>();
+	// Weak keys and values : the interned scripts do not keep themselves
+	private static Map<CompiledScript, WeakReference<CompiledScript>> interned = new WeakHashMap<CompiledScript, WeakReference<CompiledScript>>();
+
+	private ScriptCompiler() {
+	}
+
+	/**
+	 * @param fileName
+	 *            The script file
+	 * @return the compiled script (from the cache if the file has not changed)
+	 * @throws IOException
+	 *             If the file cannot be read or has a wrong instruction
+	 */
+	public static synchronized CompiledScript compile(String fileName)
+			throws IOException {
+		File file = new File(fileName);
+		long lastModified = file.lastModified();
+		long length = file.length();
+		Entry entry = cache.get(fileName);
+		if (entry != null && lastModified != 0
+				&& entry.lastModified == lastModified && entry.length == length)
+			return entry.script;
+
+		cache.remove(fileName);
+		entry = new Entry();
+		entry.lastModified = lastModified;
+		entry.length = length;
+		entry.script = intern(parse(fileName));
+		cache.put(fileName, entry);
+		return entry.script;
+	}
+
+	/**
+	 * Forget all the compiled scripts
+	 */
+	public static synchronized void clear() {
+		cache.clear();
+		interned.clear();
+	}
+
+	private static CompiledScript intern(CompiledScript script) {
+		WeakReference<CompiledScript> ref = interned.get(script);
+		CompiledScript s = (ref == null) ? null : ref.get();
+		if (s != null)
+			return s;
+		interned.put(script, new WeakReference<CompiledScript>(script));
+		return script;
+	}
+
+	// ------------------------------------------------------------
+	// Parse the file
+	// ------------------------------------------------------------
+	private static CompiledScript parse(String fileName) throws IOException {
+		int[] code = new int[16 * CompiledScript.WIDTH];
+		int size = 0;
+		int nLine = 0;
+		BufferedReader br = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				nLine++;
+				if (size == code.length)
+					code = Arrays.copyOf(code, 2 * size);
+				String[] inst = line.trim().split("\\s+");
+				String command = inst[0].toLowerCase();
+				try {
+					if (command.equals("psend")) {
+						code[size] = CommandType.PSEND;
+						code[size + 1] = Integer.parseInt(inst[1]);
+					} else if (command.equals("send")) {
+						code[size] = CommandType.SEND;
+						code[size + 1] = Integer.parseInt(inst[1]);
+						code[size + 2] = Integer.parseInt(inst[2]);
+					} else if (command.equals("delay")) {
+						code[size] = CommandType.DELAY;
+						code[size + 1] = Integer.parseInt(inst[1]);
+					} else if (command.equals("break"))
+						code[size] = CommandType.BREAK;
+					else
+						code[size] = CommandType.UNKNOWN;
+				} catch (RuntimeException e) {
+					throw new IOException(fileName + " (line " + nLine
+							+ ") : wrong instruction \"" + line + "\"");
+				}
+				size += CompiledScript.WIDTH;
+			}
+		} finally {
+			br.close();
+		}
+		return new CompiledScript(Arrays.copyOf(code, size));
+	}
+}
@@ -19,13 +19,7 @@ public class ScriptInterpreter {
 	// Transform the command value to command name
 	// ------------------------------------------------------------
 	public static String command(int i) {
-		if (i == 0)
-			return "DELAY";
-		if (i == 1)
-			return "SEND";
-		if (i == 2)
-			return "BREAK";
-		return "";
+		return CommandType.getCommandName(i);
 	}
 
 }
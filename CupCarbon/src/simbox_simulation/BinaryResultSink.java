@@ -0,0 +1,245 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @version 1.0
+ *
+ *          Results in a compact binary columnar format. The header is the
+ *          magic number CCRS, the version, the number of sensors and 1 if the
+ *          events are saved (0 otherwise). The frames are kept and written by
+ *          blocks of at most MAX_FRAMES frames (less when there are many
+ *          sensors, to limit the memory). A block contains its number of
+ *          frames, the times, then the column of each sensor : the energies
+ *          of the sensor in all the frames of the block, then its events.
+ *          Each value is written as the difference with the previous value
+ *          of the same column (the energy of a sensor changes slowly), as a
+ *          variable length integer (7 bits by byte, zig-zag encoding for the
+ *          sign). The method toCsv converts a file to the CSV format.
+ */
+public class BinaryResultSink extends ResultSink {
+
+	public static final int MAGIC = 0x43435253;
+	public static final int VERSION = 2;
+	public static final int MAX_FRAMES = 256;
+	// Maximum number of energies kept in a block
+	private static final int MAX_VALUES = 1 << 20;
+
+	private int n;
+	private int maxFrames;
+	private int nbFrames = 0;
+	private long[] times;
+	// The frames of the block (one frame after the other)
+	private int[] energies;
+	private int[] events;
+
+	private long lastTime = 0;
+	private int[] lastEnergy;
+	private int[] lastEvent;
+
+	public BinaryResultSink(String fileName) throws IOException {
+		super(fileName);
+	}
+
+	/**
+	 * @param n
+	 *            Number of sensors
+	 * @return the number of frames of a block
+	 */
+	public static int blockSize(int n) {
+		return Math.max(1, Math.min(MAX_FRAMES, MAX_VALUES / Math.max(1, n)));
+	}
+
+	@Override
+	public void write(long time, int[] energy, int[] event) throws IOException {
+		if (lastEnergy == null) {
+			n = energy.length;
+			maxFrames = blockSize(n);
+			times = new long[maxFrames];
+			energies = new int[maxFrames * n];
+			lastEnergy = new int[n];
+			if (event != null) {
+				events = new int[maxFrames * n];
+				lastEvent = new int[n];
+			}
+			writeInt(MAGIC);
+			writeInt(VERSION);
+			writeInt(n);
+			writeInt((event != null) ? 1 : 0);
+		}
+		times[nbFrames] = time;
+		System.arraycopy(energy, 0, energies, nbFrames * n, n);
+		if (events != null)
+			System.arraycopy(event, 0, events, nbFrames * n, n);
+		if (++nbFrames == maxFrames)
+			writeBlock();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (nbFrames > 0)
+			writeBlock();
+		super.close();
+	}
+
+	// ------------------------------------------------------------
+	// Write the frames of the block by columns
+	// ------------------------------------------------------------
+	private void writeBlock() throws IOException {
+		writeVarLong(nbFrames);
+		for (int f = 0; f < nbFrames; f++) {
+			writeVarLong(times[f] - lastTime);
+			lastTime = times[f];
+		}
+		for (int i = 0; i < n; i++) {
+			writeColumn(energies, i, lastEnergy);
+			if (events != null)
+				writeColumn(events, i, lastEvent);
+		}
+		nbFrames = 0;
+	}
+
+	private void writeColumn(int[] values, int i, int[] last)
+			throws IOException {
+		int v = last[i];
+		for (int k = i; k < nbFrames * n; k += n) {
+			writeVarLong((long) values[k] - v);
+			v = values[k];
+		}
+		last[i] = v;
+	}
+
+	private void writeInt(int v) throws IOException {
+		ensure(4);
+		buffer[position++] = (byte) (v >>> 24);
+		buffer[position++] = (byte) (v >>> 16);
+		buffer[position++] = (byte) (v >>> 8);
+		buffer[position++] = (byte) v;
+	}
+
+	private void writeVarLong(long v) throws IOException {
+		ensure(10);
+		long z = (v << 1) ^ (v >> 63);
+		while ((z & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((z & 0x7F) | 0x80);
+			z >>>= 7;
+		}
+		buffer[position++] = (byte) z;
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		return readVarLong(in, in.read());
+	}
+
+	// b : first byte (already read)
+	private static long readVarLong(InputStream in, int b) throws IOException {
+		long z = 0;
+		int shift = 0;
+		while (true) {
+			if (b < 0)
+				throw new EOFException();
+			z |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+			shift += 7;
+			b = in.read();
+		}
+		return (z >>> 1) ^ -(z & 1);
+	}
+
+	private static void readColumn(InputStream in, int[] values, int i,
+			int n, int nbFrames, int[] last) throws IOException {
+		int v = last[i];
+		for (int k = i; k < nbFrames * n; k += n) {
+			v += (int) readVarLong(in);
+			values[k] = v;
+		}
+		last[i] = v;
+	}
+
+	/**
+	 * Convert a binary result file to the CSV format
+	 *
+	 * @param binFileName
+	 * @param csvFileName
+	 * @throws IOException
+	 */
+	public static void toCsv(String binFileName, String csvFileName)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(binFileName), BUFFER_SIZE));
+		CsvResultSink csv = new CsvResultSink(csvFileName);
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(binFileName + " is not a result file");
+			if (in.readInt() != VERSION)
+				throw new IOException(binFileName + " : unknown version");
+			int n = in.readInt();
+			boolean hasEvents = (in.readInt() == 1);
+			int maxFrames = blockSize(n);
+			long[] times = new long[maxFrames];
+			int[] energies = new int[maxFrames * n];
+			int[] events = hasEvents ? new int[maxFrames * n] : null;
+			int[] lastEnergy = new int[n];
+			int[] lastEvent = new int[n];
+			int[] energy = new int[n];
+			int[] event = hasEvents ? new int[n] : null;
+			long time = 0;
+			int b;
+			while ((b = in.read()) >= 0) {
+				int nbFrames = (int) readVarLong(in, b);
+				if (nbFrames <= 0)
+					throw new IOException(binFileName + " : wrong block");
+				if (nbFrames > maxFrames) {
+					maxFrames = nbFrames;
+					times = new long[maxFrames];
+					energies = new int[maxFrames * n];
+					if (hasEvents)
+						events = new int[maxFrames * n];
+				}
+				for (int f = 0; f < nbFrames; f++) {
+					time += readVarLong(in);
+					times[f] = time;
+				}
+				for (int i = 0; i < n; i++) {
+					readColumn(in, energies, i, n, nbFrames, lastEnergy);
+					if (hasEvents)
+						readColumn(in, events, i, n, nbFrames, lastEvent);
+				}
+				for (int f = 0; f < nbFrames; f++) {
+					System.arraycopy(energies, f * n, energy, 0, n);
+					if (hasEvents)
+						System.arraycopy(events, f * n, event, 0, n);
+					csv.write(times[f], energy, event);
+				}
+			}
+		} finally {
+			in.close();
+			csv.close();
+		}
+	}
+}
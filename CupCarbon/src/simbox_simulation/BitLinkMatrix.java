@@ -0,0 +1,165 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.Arrays;
+
+/**
+ * @version 1.0
+ *
+ *          Links stored in bits : each row is an array of longs (64 sensors by
+ *          word), so n^2 / 8 bytes. The senders are also kept in a bitset
+ *          (setSending) and the consumption of a sensor is the number of bits
+ *          of (row & senders), counted word by word with Long.bitCount. When
+ *          the senders do not all have the same value, the bits of (row &
+ *          senders) are visited one by one.
+ */
+public class BitLinkMatrix implements LinkMatrix {
+
+	private int n;
+	private int nbWords;
+	private long[][] rows;
+
+	private int[] sending;
+	private long[] senders;
+	// Value of all the senders (-1 if they do not have the same value)
+	private int weight = 0;
+
+	public BitLinkMatrix(int n) {
+		this.n = n;
+		nbWords = (n + 63) >>> 6;
+		rows = new long[n][nbWords];
+		senders = new long[nbWords];
+	}
+
+	// Same rows, its own senders
+	private BitLinkMatrix(BitLinkMatrix matrix) {
+		n = matrix.n;
+		nbWords = matrix.nbWords;
+		rows = matrix.rows;
+		senders = new long[nbWords];
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public boolean isLinked(int i, int j) {
+		return (rows[i][j >>> 6] & (1L << j)) != 0;
+	}
+
+	@Override
+	public void link(int i, int j) {
+		rows[i][j >>> 6] |= 1L << j;
+	}
+
+	@Override
+	public void unlink(int i, int j) {
+		rows[i][j >>> 6] &= ~(1L << j);
+	}
+
+	@Override
+	public void clear() {
+		for (long[] row : rows)
+			Arrays.fill(row, 0L);
+	}
+
+	@Override
+	public int[] neighbours(int i) {
+		long[] row = rows[i];
+		int[] result = new int[degree(i)];
+		int m = 0;
+		for (int w = 0; w < nbWords; w++) {
+			long bits = row[w];
+			while (bits != 0) {
+				result[m++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void setSending(int[] sending) {
+		this.sending = sending;
+		Arrays.fill(senders, 0L);
+		weight = 0;
+		for (int j = 0; j < n; j++) {
+			int v = sending[j];
+			if (v != 0) {
+				senders[j >>> 6] |= 1L << j;
+				if (weight == 0)
+					weight = v;
+				else if (weight != v)
+					weight = -1;
+			}
+		}
+	}
+
+	@Override
+	public int consumption(int i, int[] sending) {
+		if (sending != this.sending)
+			setSending(sending);
+		long[] row = rows[i];
+		if (weight == 0)
+			return 0;
+		if (weight > 0) {
+			int count = 0;
+			for (int w = 0; w < nbWords; w++)
+				count += Long.bitCount(row[w] & senders[w]);
+			return count * weight;
+		}
+		int conso = 0;
+		for (int w = 0; w < nbWords; w++) {
+			long bits = row[w] & senders[w];
+			while (bits != 0) {
+				conso += sending[(w << 6) + Long.numberOfTrailingZeros(bits)];
+				bits &= bits - 1;
+			}
+		}
+		return conso;
+	}
+
+	@Override
+	public LinkMatrix share() {
+		return new BitLinkMatrix(this);
+	}
+
+	@Override
+	public LinkMatrix copy() {
+		BitLinkMatrix copy = new BitLinkMatrix(n);
+		for (int i = 0; i < n; i++)
+			copy.rows[i] = rows[i].clone();
+		return copy;
+	}
+
+	/**
+	 * @param i
+	 * @return the number of links of the sensor i
+	 */
+	public int degree(int i) {
+		int count = 0;
+		for (long word : rows[i])
+			count += Long.bitCount(word);
+		return count;
+	}
+}
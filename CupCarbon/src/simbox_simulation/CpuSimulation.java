@@ -19,15 +19,10 @@
 
 package simbox_simulation;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.List;
-import java.util.ListIterator;
 
 import map.Layer;
-import project.Project;
-import cupcarbon.WsnSimulationWindow;
 import device.Device;
 import device.DeviceList;
 
@@ -40,52 +35,81 @@ import device.DeviceList;
  */
 public class CpuSimulation extends Thread {
 
-	private boolean discreteEvent = true;
-	private boolean mobility = false;
-	private int step = 1;
-	private int energyMax = 0;
-	private int iterNumber = 0;
-	private int nbSensors = 0;
-	private int scriptSize = 0;
-	private int[][][] script;
-	private byte[] iscript;
-	private int[] event;
-	private int[] event2;
-	private int[] deadSensor;
-	private int[] energy;
-	private byte eRTx = 1;
-	private byte[][] links;
-
-	private boolean visual;
-	private int visualDelay;
+	protected boolean discreteEvent = true;
+	protected boolean mobility = false;
+	protected int step = 1;
+	protected int energyMax = 0;
+	protected int iterNumber = 0;
+	protected int nbSensors = 0;
+	protected int scriptSize = 0;
+	protected int[][][] script;
+	protected byte[] iscript;
+	protected int[] event;
+	protected int[] event2;
+	protected int[] deadSensor;
+	protected int[] energy;
+	protected byte eRTx = 1;
+	protected LinkMatrix links;
+	protected int[] sending;
+	// Lazy energies : energy[i] is the energy at the time since[i] and the
+	// sensor consumes rate[i] by unit of time
+	protected int[] rate;
+	protected long[] since;
+
+	protected boolean visual;
+	protected int visualDelay;
+	protected boolean fastForward;
+
+	protected SimulationContext context;
+	protected SimulationListener listener;
+	protected List<Device> devices;
+	protected long iterations = 0;
+	// The batteries of the devices receive the final energies
+	private boolean updateDevices = true;
 
 	public CpuSimulation() {
 		init();
 	}
 
+	public CpuSimulation(SimulationContext context) {
+		init(context);
+	}
+
 	// ------------------------------------------------------------
-	// Initialization 
+	// Initialization (from SimulationInputs and DeviceList)
 	// ------------------------------------------------------------
 	public void init() {
-		discreteEvent = SimulationInputs.discreteEvent;
-		mobility = SimulationInputs.mobility;
-		step = SimulationInputs.step;
-		energyMax = SimulationInputs.energyMax;
-		iterNumber = SimulationInputs.iterNumber;
-		nbSensors = SimulationInputs.nbSensors;
-		scriptSize = SimulationInputs.scriptSize;
-		visual = SimulationInputs.visual;
-		visualDelay = SimulationInputs.visualDelay;
-
 		SimulationInputs.gpuScript = null;
 		SimulationInputs.gpuLinks = null;
-		script = SimulationInputs.script;
-		links = SimulationInputs.links;
+		init(SimulationContext.fromInputs());
+	}
+
+	// ------------------------------------------------------------
+	// Initialization 
+	// ------------------------------------------------------------
+	public void init(SimulationContext context) {
+		this.context = context;
+		discreteEvent = context.isDiscreteEvent();
+		mobility = context.isMobility();
+		step = context.getStep();
+		energyMax = context.getEnergyMax();
+		iterNumber = context.getIterNumber();
+		nbSensors = context.getNbSensors();
+		scriptSize = context.getScriptSize();
+		visual = context.isVisual();
+		visualDelay = context.getVisualDelay();
+		fastForward = context.isFastForward();
+		listener = context.getListener();
+		devices = context.getDevices();
+
+		script = context.getScript();
+		links = context.shareLinks();
 
 		iscript = new byte[nbSensors];
 		event = new int[nbSensors];
 		event2 = new int[nbSensors];
 		deadSensor = new int[nbSensors];
+		sending = new int[nbSensors];
 		energy = new int[nbSensors];
 
 	}
@@ -94,13 +118,31 @@ public class CpuSimulation extends Thread {
 	// Run simulation 
 	// ------------------------------------------------------------
 	public void simulate() {
-		WsnSimulationWindow.setState("Simulation : initialization ...");
+		// Without mobility, the next event is read from a heap (the
+		// fast-forward works on the remaining times of the events)
+		if (!mobility && !fastForward) {
+			simulateEvents();
+			return;
+		}
+		simulateSteps();
+	}
+
+	// ------------------------------------------------------------
+	// Run simulation with mobility or fast-forward : each iteration
+	// applies the phases (nextEvent, nextMove, consume, advance) to all
+	// the sensors. ParallelCpuSimulation runs the phases on a pool of
+	// threads.
+	// ------------------------------------------------------------
+	protected void simulateSteps() {
+		listener.stateChanged("Simulation : initialization ...");
 		System.out.println("Initialization ... ");
-		List<Device> devices = DeviceList.getNodes();
 		int k = 0;
+		int alive = 0;
 		for (Device device : devices) {
 			event[k] = script[k][0][1];
 			energy[k] = energyMax;
+			if (energy[k] > 0)
+				alive++;
 			if (mobility) {
 				device.fixori();
 				device.loadRouteFromFile();
@@ -111,6 +153,7 @@ public class CpuSimulation extends Thread {
 			}
 			k++;
 		}
+		startPhases();
 		System.out.println("End of Initialization.");
 		int min = 0;
 		int min1;
@@ -119,70 +162,32 @@ public class CpuSimulation extends Thread {
 		long startTime = System.currentTimeMillis();
 		System.out.println("Start Simulation (CPU : D-Event) ... ");
 		long iter = 0;
-		WsnSimulationWindow.setState("Simulation : End of initialization.");
-		WsnSimulationWindow.setState("Simulate (CPU) ...");
+		listener.stateChanged("Simulation : End of initialization.");
+		listener.stateChanged("Simulate (CPU) ...");
 
 		try {
 			String as = "";
 			if (mobility)
 				as = "_mob";
-			PrintStream ps = new PrintStream(new FileOutputStream(
-					Project.getProjectResultsPath() + "/cpu_simulation" + as
-							+ ".csv"));
-			int conso;
-			for (iter = 0; (iter < iterNumber) && (!stopSimulation()); iter++) {
-				ps.print(time + ";");
-
-				for (int i = 0; i < nbSensors; i++) {
-					ps.print(energy[i] + ";");
-				}
-				for (int i = 0; i < nbSensors; i++) {
-					ps.print(event[i] + ";");
-				}
-				ps.println();
-
-				// for (int i = 0; i < nbSensors; i++) {
-				// System.out.print(event[i]+" ");
-				// }
-				// for (int i = 0; i < nbSensors; i++) {
-				// System.out.print(event2[i]+" ");
-				// }
-				// System.out.println();
+			ResultSink results = context.newResultSink(as);
+			// The cycles of the scripts are jumped (without mobility)
+			FastForward ff = null;
+			if (fastForward && !mobility && discreteEvent) {
+				ff = new FastForward(script, scriptSize, nbSensors);
+				ff.start(time, 0, energy, event, iscript, deadSensor);
+			}
+			for (iter = 0; (iter < iterNumber) && (alive > 0); iter++) {
+				results.write(time, energy, event);
 
 				// ============================================================
 				if (mobility) {
-					Device d1 = null;
-					Device d2 = null;
-					ListIterator<Device> iterator;
-					ListIterator<Device> iterator2;
-					iterator = devices.listIterator();
-					int n = devices.size();
-					int i2 = 0;
-					int j2 = 0;
-					while (iterator.hasNext()) {
-						d1 = iterator.next();
-						links[i2][i2] = 1;
-						if (iterator.nextIndex() < n) {
-							j2 = i2 + 1;
-							iterator2 = devices.listIterator(iterator
-									.nextIndex());
-							while (iterator2.hasNext()) {
-								d2 = iterator2.next();
-								if (d1.radioDetect(d2)) {
-									links[i2][j2] = 1;
-									links[j2][i2] = 1;
-								} else {
-									links[i2][j2] = 0;
-									links[j2][i2] = 0;
-								}
-								j2++;
-							}
-							i2++;
-						}
-					}
+					// Only the links of the moved devices are updated
+					NetworkGeneratorForCpu.updateLinks(links,
+							DeviceList.getSpatialIndex(),
+							DeviceList.takeMovedNodes());
 					if (discreteEvent) {
-						min1 = getMin();
-						min2 = getMin2();
+						min1 = nextEvent();
+						min2 = nextMove();
 					} else {
 						min1 = step;
 						min2 = step;
@@ -192,60 +197,46 @@ public class CpuSimulation extends Thread {
 					if (min2 < min1)
 						min = min2;
 				} else
-					min = getMin();
+					min = nextEvent();
 				// ============================================================
 
 				time += min;
 
-				for (int i = 0; i < nbSensors; i++) {
-					conso = 0;
-					for (int j = 0; j < nbSensors; j++) {
-						conso += links[i][j] * script[j][iscript[j]][0]
-								* (1 - deadSensor[j]);
-					}
-					energy[i] -= min * conso * eRTx;
-					if (energy[i] < 0)
-						energy[i] = 0;
-					event[i] -= min;
-					if (mobility)
-						event2[i] -= min;
-				}
-
-				for (int i = 0; i < nbSensors; i++) {
-					if (event[i] == 0) {
-						iscript[i]++;
-						iscript[i] = (byte) (iscript[i] % scriptSize);
-						event[i] = script[i][iscript[i]][1];
-					}
-					if (mobility)
-						if (event2[i] == 0) {
-							if (devices.get(i).canMove()) {
-								devices.get(i).exeNext(visual, visualDelay);
-								event2[i] = devices.get(i).getNextTime();
-							}
-						}
-					if (energy[i] <= 0) {
-						event[i] = 99999999;
-						deadSensor[i] = 1;
-					}
+				consume(min);
+				alive = advance();
+				if (mobility)
+					move();
+				if (ff != null) {
+					long cycles = ff.check(time, iter + 1, iterNumber, energy,
+							event, iscript, deadSensor);
+					time += cycles * ff.getPeriod();
+					iter += cycles * ff.getCycleIterations();
 				}
-				WsnSimulationWindow
-						.setProgress((int) (1000 * iter / iterNumber));
+				listener.progressChanged((int) (1000 * iter / iterNumber));
 			}
-			ps.close();
-		} catch (FileNotFoundException e) {
+			if (ff != null)
+				System.out.println("Fast-forward : " + ff.getCycles()
+						+ " cycles, " + ff.getJumpedIterations()
+						+ " iterations jumped.");
+			results.close(time, energy, event);
+		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			endPhases();
 		}
+		iterations = iter;
 		long endTime = System.currentTimeMillis();
 		System.out.println("End of Simulation (CPU : D-Event).");
 		System.out.println(((endTime - startTime) / 1000.) + " sec");
-		WsnSimulationWindow.setState("End (CPU Sim) at iter " + iter
+		listener.stateChanged("End (CPU Sim) at iter " + iter
 				+ ". Simulation Time : " + ((endTime - startTime) / 1000.)
 				+ " sec.");
-		WsnSimulationWindow.setProgress(0);
-		int i = 0;
-		for (Device d : devices) {
-			d.getBattery().setCapacity(energy[i++]);
+		listener.progressChanged(0);
+		if (updateDevices) {
+			int i = 0;
+			for (Device d : devices) {
+				d.getBattery().setCapacity(energy[i++]);
+			}
 		}
 		if (mobility) {
 			for (Device device : devices) {
@@ -256,6 +247,331 @@ public class CpuSimulation extends Thread {
 		}
 	}
 
+	// ------------------------------------------------------------
+	// Called before the first iteration of simulateSteps
+	// ------------------------------------------------------------
+	protected void startPhases() {
+	}
+
+	// ------------------------------------------------------------
+	// Called after the last iteration of simulateSteps
+	// ------------------------------------------------------------
+	protected void endPhases() {
+	}
+
+	// ------------------------------------------------------------
+	// Phase : time of the next end of instruction
+	// ------------------------------------------------------------
+	protected int nextEvent() {
+		return getMin();
+	}
+
+	// ------------------------------------------------------------
+	// Phase : time of the next move
+	// ------------------------------------------------------------
+	protected int nextMove() {
+		return getMin2();
+	}
+
+	// ------------------------------------------------------------
+	// Phase : sending vector, consumption of the sensors during min and
+	// decrement of the events
+	// ------------------------------------------------------------
+	protected void consume(int min) {
+		for (int j = 0; j < nbSensors; j++) {
+			sending[j] = script[j][iscript[j]][0] * (1 - deadSensor[j]);
+		}
+		links.setSending(sending);
+		int conso;
+		for (int i = 0; i < nbSensors; i++) {
+			conso = links.consumption(i, sending);
+			energy[i] -= min * conso * eRTx;
+			if (energy[i] < 0)
+				energy[i] = 0;
+			event[i] -= min;
+			if (mobility)
+				event2[i] -= min;
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Phase : next instructions of the scripts and deaths, returns the
+	// number of sensors alive
+	// ------------------------------------------------------------
+	protected int advance() {
+		int alive = 0;
+		for (int i = 0; i < nbSensors; i++) {
+			if (event[i] == 0) {
+				iscript[i]++;
+				iscript[i] = (byte) (iscript[i] % scriptSize);
+				event[i] = script[i][iscript[i]][1];
+			}
+			if (energy[i] <= 0) {
+				event[i] = 99999999;
+				deadSensor[i] = 1;
+			} else
+				alive++;
+		}
+		return alive;
+	}
+
+	// ------------------------------------------------------------
+	// Moves of the devices whose next move is now (not parallelized)
+	// ------------------------------------------------------------
+	private void move() {
+		for (int i = 0; i < nbSensors; i++) {
+			if (event2[i] == 0) {
+				if (devices.get(i).canMove()) {
+					devices.get(i).exeNext(visual, visualDelay);
+					event2[i] = devices.get(i).getNextTime();
+				}
+			}
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Run simulation without mobility : the absolute times of the ends of
+	// the instructions are kept in an IndexedMinHeap, so the next event is
+	// read without scanning all the sensors and only the sensors of the
+	// event read their next instruction. The energies are computed lazily
+	// (energy[i] is the energy at the time since[i]) : a sensor is only
+	// updated when its consumption changes (a linked sensor starts or
+	// stops sending) or when it is checked for death.
+	//
+	// The checks are kept in a second heap : the key of a sensor is the
+	// time when its energy would be exhausted with its highest consumption
+	// (all its neighbours send their largest packet), so the sensor cannot
+	// die before it and the key does not change with the consumption. At
+	// its key, the sensor dies if it has no more energy, otherwise it gets
+	// a new key. An iteration costs O(fired x (log n + neighbours)), plus
+	// the frame of the results (n values) when they are saved.
+	// ------------------------------------------------------------
+	protected void simulateEvents() {
+		listener.stateChanged("Simulation : initialization ...");
+		System.out.println("Initialization ... ");
+		int[][] receivers = receivers(links, nbSensors);
+		rate = new int[nbSensors];
+		since = new long[nbSensors];
+		int[] maxRate = new int[nbSensors];
+		IndexedMinHeap events = new IndexedMinHeap(nbSensors);
+		IndexedMinHeap checks = new IndexedMinHeap(nbSensors);
+		for (int i = 0; i < nbSensors; i++) {
+			energy[i] = energyMax;
+			events.put(i, script[i][0][1]);
+			sending[i] = script[i][0][0];
+			int max = 0;
+			for (int k = 0; k < scriptSize; k++)
+				max = Math.max(max, script[i][k][0]);
+			for (int j : receivers[i])
+				maxRate[j] += max * eRTx;
+		}
+		links.setSending(sending);
+		int alive = (energyMax > 0) ? nbSensors : 0;
+		for (int i = 0; i < nbSensors; i++) {
+			rate[i] = links.consumption(i, sending) * eRTx;
+			if (alive > 0 && maxRate[i] > 0)
+				checks.put(i, depletion(i, maxRate[i]));
+		}
+		System.out.println("End of Initialization.");
+		long time = 0;
+		long startTime = System.currentTimeMillis();
+		System.out.println("Start Simulation (CPU : D-Event) ... ");
+		long iter = 0;
+		listener.stateChanged("Simulation : End of initialization.");
+		listener.stateChanged("Simulate (CPU) ...");
+
+		// The frames need the energies and the remaining times of all the
+		// events
+		boolean frames = (context.getResultsPath() != null);
+		int[] frame = frames ? new int[nbSensors] : null;
+		// A sensor can die and end its instruction at the same time
+		int[] changed = new int[2 * nbSensors];
+		int[] now = new int[nbSensors];
+		try {
+			ResultSink results = context.newResultSink("");
+			for (iter = 0; (iter < iterNumber) && (alive > 0); iter++) {
+				if (frames) {
+					frame(time, events, frame);
+					results.write(time, frame, event);
+				}
+
+				// The dead sensors have an event in 99999999
+				long next = events.peekKey();
+				if (alive < nbSensors)
+					next = Math.min(next, time + 99999999);
+				time = next;
+
+				// The sensors that can have no more energy
+				int nbChanged = 0;
+				while (checks.peekKey() <= time) {
+					int i = checks.poll();
+					update(i, time);
+					if (energy[i] > 0) {
+						checks.put(i, depletion(i, maxRate[i]));
+						continue;
+					}
+					deadSensor[i] = 1;
+					alive--;
+					changed[nbChanged++] = i;
+				}
+
+				// The sensors whose instruction ends (an instruction of
+				// duration 0 ends at the next iteration)
+				int nbNow = 0;
+				while (events.peekKey() == time) {
+					int i = events.peek();
+					changed[nbChanged++] = i;
+					iscript[i]++;
+					iscript[i] = (byte) (iscript[i] % scriptSize);
+					if (script[i][iscript[i]][1] == 0) {
+						events.remove(i);
+						now[nbNow++] = i;
+					} else
+						events.put(i, time + script[i][iscript[i]][1]);
+				}
+				for (int k = 0; k < nbNow; k++)
+					events.put(now[k], time);
+
+				// New consumptions of the sensors that receive them. When
+				// they are more than the sensors (synchronized network), all
+				// the sensors are updated once.
+				int nbReceivers = 0;
+				for (int k = 0; k < nbChanged; k++) {
+					int i = changed[k];
+					if (deadSensor[i] == 1)
+						events.remove(i);
+					if (script[i][iscript[i]][0] * (1 - deadSensor[i]) != sending[i])
+						nbReceivers += receivers[i].length;
+				}
+				boolean all = nbReceivers > nbSensors;
+				if (all)
+					for (int i = 0; i < nbSensors; i++)
+						update(i, time);
+				for (int k = 0; k < nbChanged; k++) {
+					int i = changed[k];
+					int s = script[i][iscript[i]][0] * (1 - deadSensor[i]);
+					if (s == sending[i])
+						continue;
+					int delta = (s - sending[i]) * eRTx;
+					sending[i] = s;
+					for (int j : receivers[i]) {
+						if (!all)
+							update(j, time);
+						rate[j] += delta;
+					}
+				}
+				listener.progressChanged((int) (1000 * iter / iterNumber));
+			}
+			if (frames)
+				frame(time, events, frame);
+			results.close(time, frame, event);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		for (int i = 0; i < nbSensors; i++)
+			update(i, time);
+		iterations = iter;
+		long endTime = System.currentTimeMillis();
+		System.out.println("End of Simulation (CPU : D-Event).");
+		System.out.println(((endTime - startTime) / 1000.) + " sec");
+		listener.stateChanged("End (CPU Sim) at iter " + iter
+				+ ". Simulation Time : " + ((endTime - startTime) / 1000.)
+				+ " sec.");
+		listener.progressChanged(0);
+		if (updateDevices) {
+			int i = 0;
+			for (Device d : devices) {
+				d.getBattery().setCapacity(energy[i++]);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Energy of the sensor i at the time t
+	// ------------------------------------------------------------
+	protected void update(int i, long t) {
+		long e = energy[i] - (long) rate[i] * (t - since[i]);
+		energy[i] = (e < 0) ? 0 : (int) e;
+		since[i] = t;
+	}
+
+	// ------------------------------------------------------------
+	// First time when the energy of the sensor i is <= 0 if it consumes
+	// rate (> 0) by unit of time
+	// ------------------------------------------------------------
+	protected long depletion(int i, int rate) {
+		return since[i] + (energy[i] + (long) rate - 1) / rate;
+	}
+
+	// ------------------------------------------------------------
+	// Energies (frame) and remaining times of the instructions (event)
+	// at the time t
+	// ------------------------------------------------------------
+	private void frame(long t, IndexedMinHeap events, int[] frame) {
+		for (int i = 0; i < nbSensors; i++) {
+			if (deadSensor[i] == 1) {
+				frame[i] = 0;
+				event[i] = 99999999;
+			} else {
+				long e = energy[i] - (long) rate[i] * (t - since[i]);
+				frame[i] = (e < 0) ? 0 : (int) e;
+				event[i] = (int) (events.getKey(i) - t);
+			}
+		}
+	}
+
+	/**
+	 * @param links
+	 * @param n
+	 *            Number of sensors
+	 * @return the transpose of the links : receivers[j] contains the sensors
+	 *         i linked to j (the sensors whose consumption changes when j
+	 *         starts or stops sending)
+	 */
+	public static int[][] receivers(LinkMatrix links, int n) {
+		int[][] neighbours = new int[n][];
+		int[] count = new int[n];
+		for (int i = 0; i < n; i++) {
+			neighbours[i] = links.neighbours(i);
+			for (int j : neighbours[i])
+				count[j]++;
+		}
+		int[][] receivers = new int[n][];
+		for (int j = 0; j < n; j++)
+			receivers[j] = new int[count[j]];
+		for (int i = 0; i < n; i++)
+			for (int j : neighbours[i])
+				receivers[j][--count[j]] = i;
+		return receivers;
+	}
+
+	/**
+	 * @param updateDevices
+	 *            If the batteries of the devices receive the energies at the
+	 *            end of the simulation (true by default)
+	 */
+	public void setUpdateDevices(boolean updateDevices) {
+		this.updateDevices = updateDevices;
+	}
+
+	public boolean isUpdateDevices() {
+		return updateDevices;
+	}
+
+	/**
+	 * @return the energy of each sensor (at the end of the simulation)
+	 */
+	public int[] getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * @return the number of iterations done
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
 	// ------------------------------------------------------------
 	// Run simulation (call the simulate() method)
 	// ------------------------------------------------------------
@@ -19,14 +19,10 @@
 
 package simbox_simulation;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.LinkedList;
 
 import map.Layer;
-import project.Project;
-import cupcarbon.WsnSimulationWindow;
 import device.Device;
 import device.DeviceList;
 
@@ -43,6 +39,7 @@ public class CpuSimulation2 extends Thread {
 	public static int step = 1 ;
 	public static int energyMax = 0;
 	public static int iterNumber = 0;
+	private long iterations = 0;
 	public static int nbSensors = 0;
 	public static int scriptSize = 0;
 
@@ -50,11 +47,11 @@ public class CpuSimulation2 extends Thread {
 	
 	public static int[][][] script;
 	public static byte[] iscript;
-	public static int[] event;
 	public static int[] deadSensor;
 	public static int[] energy;
 	public static byte eRTx = 1;
-	public static byte[][] links;
+	public static LinkMatrix links;
+	public static int[] sending;
 
 	public CpuSimulation2() {
 		init();
@@ -74,11 +71,11 @@ public class CpuSimulation2 extends Thread {
 		SimulationInputs.gpuScript=null;
 		SimulationInputs.gpuLinks=null;
 		script = SimulationInputs.script;
-		links = SimulationInputs.links;
+		links = SimulationInputs.linkMatrix;
 		
 		iscript = new byte[nbSensors];
-		event = new int[nbSensors];
 		deadSensor = new int[nbSensors];
+		sending = new int[nbSensors];
 		energy = new int[nbSensors];
 		
 	}
@@ -87,69 +84,106 @@ public class CpuSimulation2 extends Thread {
 	//
 	// ------------------------------------------------------------
 	public void simulate() {	
-		WsnSimulationWindow.setState("Simulation : initialization ...");
+		SimulationInputs.listener.stateChanged("Simulation : initialization ...");
 		System.out.println("Initialization ... ");
+		// Absolute times of the ends of the instructions and consumptions
+		// (only changed when a linked sensor starts or stops sending)
+		IndexedMinHeap events = new IndexedMinHeap(nbSensors);
+		int[][] receivers = CpuSimulation.receivers(links, nbSensors);
+		int[] rate = new int[nbSensors];
 		for (int i = 0; i < nbSensors; i++) {
-			event[i] = script[i][0][1];
+			events.put(i, script[i][0][1]);
 			energy[i] = energyMax;
+			sending[i] = script[i][0][0];
 		}
+		links.setSending(sending);
+		for (int i = 0; i < nbSensors; i++)
+			rate[i] = links.consumption(i, sending) * eRTx;
+		int alive = (energyMax > 0) ? nbSensors : 0;
+		int[] changed = new int[2 * nbSensors];
+		int[] now = new int[nbSensors];
 		System.out.println("End of Initialization.");
 		int min;
 		long time = 0;		
 		long startTime = System.currentTimeMillis();		
 		System.out.println("Start Simulation (CPU : D-Event) ... ");
 		long iter=0;
-		WsnSimulationWindow.setState("Simulation : End of initialization.");
-		WsnSimulationWindow.setState("Simulate (CPU) ...");
+		SimulationInputs.listener.stateChanged("Simulation : End of initialization.");
+		SimulationInputs.listener.stateChanged("Simulate (CPU) ...");
 				
 		try {
-			PrintStream ps = new PrintStream(new FileOutputStream(Project.getProjectResultsPath()+"/cpu_simulation.csv"));			
-			for (iter = 0; (iter < iterNumber) && (!stopSimulation()); iter++) {
-				ps.print(time+ ";");
-				for (int i = 0; i < nbSensors; i++) {
-					ps.print(energy[i]+ ";");
+			ResultSink results = ResultSink.newInstance("cpu_simulation");
+			for (iter = 0; (iter < iterNumber) && (alive > 0); iter++) {
+				results.write(time, energy, null);
+				if(discreteEvent) {
+					// The dead sensors have an event in 99999999
+					long next = events.peekKey();
+					if (alive < nbSensors)
+						next = Math.min(next, time + 99999999);
+					min = (int) (next - time);
 				}
-				ps.println();
-				if(discreteEvent)
-					min = min();
 				else
 					min = step;
 				time += min;			
-				int conso;
+				int nbChanged = 0;
 				for (int i = 0; i < nbSensors; i++) {				
-					conso = 0;
-					for (int j = 0; j < nbSensors; j++) {
-						conso += links[i][j] * script[j][iscript[j]][0] * (1-deadSensor[j]);
-					}
-					energy[i] -= min * conso * eRTx;
+					energy[i] -= min * rate[i];
 					if(energy[i]<0) energy[i]=0;
-					event[i] -= min;
-					
+					if (energy[i] <= 0 && deadSensor[i] == 0) {
+						deadSensor[i]=1;
+						alive--;
+						changed[nbChanged++] = i;
+					}
 				}
 
-				for (int i = 0; i < nbSensors; i++) {
-					if (event[i] == 0) {
-						iscript[i]++;
-						iscript[i] = (byte)(iscript[i] % scriptSize);
-						event[i] = script[i][iscript[i]][1];
+				// The sensors whose instruction ends (with a step, an
+				// instruction whose end is passed is never ended and an
+				// instruction of duration 0 ends at the next iteration)
+				int nbNow = 0;
+				while (events.peekKey() <= time) {
+					int i = events.peek();
+					if (events.peekKey() < time) {
+						events.remove(i);
+						continue;
 					}
-					if (energy[i] <= 0) {
-						event[i] = 99999999;
-						deadSensor[i]=1;
-					}				
+					changed[nbChanged++] = i;
+					iscript[i]++;
+					iscript[i] = (byte)(iscript[i] % scriptSize);
+					if (script[i][iscript[i]][1] == 0) {
+						events.remove(i);
+						now[nbNow++] = i;
+					} else
+						events.put(i, time + script[i][iscript[i]][1]);
 				}
-				WsnSimulationWindow.setProgress((int)(1000*iter/iterNumber));
+				for (int k = 0; k < nbNow; k++)
+					events.put(now[k], time);
+
+				// New consumptions of the sensors that receive them
+				for (int k = 0; k < nbChanged; k++) {
+					int i = changed[k];
+					if (deadSensor[i] == 1)
+						events.remove(i);
+					int s = script[i][iscript[i]][0] * (1-deadSensor[i]);
+					if (s == sending[i])
+						continue;
+					int delta = (s - sending[i]) * eRTx;
+					sending[i] = s;
+					for (int j : receivers[i])
+						rate[j] += delta;
+				}
+				SimulationInputs.listener.progressChanged((int)(1000*iter/iterNumber));
 			}
-			ps.close();
-		} catch (FileNotFoundException e) {
+			results.close(time, energy, null);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}		
 		long endTime = System.currentTimeMillis();
 		System.out.println("End of Simulation (CPU : D-Event).");		
 		System.out.println(((endTime-startTime)/1000.)+" sec");
-		WsnSimulationWindow.setState("End (CPU Sim) at iter " + iter + ". Simulation Time : "
+		iterations = iter;
+		SimulationInputs.listener.stateChanged("End (CPU Sim) at iter " + iter + ". Simulation Time : "
 				+ ((endTime - startTime) / 1000.) + " sec.");
-		WsnSimulationWindow.setProgress(0);
+		SimulationInputs.listener.progressChanged(0);
 		int i=0;
 		for(Device d : DeviceList.getNodes()) {
 			d.getBattery().setCapacity(energy[i++]);
@@ -164,15 +198,11 @@ public class CpuSimulation2 extends Thread {
 		simulate();
 	}
 
-	// ------------------------------------------------------------
-	//
-	// ------------------------------------------------------------
-	public static int min() {
-		int min = (int) 10e8;
-		for (int i = 0; i < nbSensors; i++)
-			if ((min > event[i]))
-				min = event[i];
-		return min;
+	/**
+	 * @return the number of iterations done
+	 */
+	public long getIterations() {
+		return iterations;
 	}
 
 	// ------------------------------------------------------------
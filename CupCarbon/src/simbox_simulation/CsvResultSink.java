@@ -0,0 +1,81 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.io.IOException;
+
+/**
+ * @version 1.0
+ *
+ *          Results in the CSV format of the simulations : time;energies;events;
+ *          (one line by iteration). The digits of the numbers are written
+ *          directly in the buffer.
+ */
+public class CsvResultSink extends ResultSink {
+
+	private static final byte[] NEW_LINE = System.getProperty(
+			"line.separator").getBytes();
+
+	// Digits of a long (20) and its sign
+	private static final int MAX_LENGTH = 21;
+
+	private byte[] digits = new byte[MAX_LENGTH];
+
+	public CsvResultSink(String fileName) throws IOException {
+		super(fileName);
+	}
+
+	@Override
+	public void write(long time, int[] energy, int[] event) throws IOException {
+		print(time);
+		for (int i = 0; i < energy.length; i++)
+			print(energy[i]);
+		if (event != null)
+			for (int i = 0; i < event.length; i++)
+				print(event[i]);
+		ensure(NEW_LINE.length);
+		for (byte b : NEW_LINE)
+			buffer[position++] = b;
+	}
+
+	// ------------------------------------------------------------
+	// Write a value followed by ;
+	// ------------------------------------------------------------
+	private void print(long v) throws IOException {
+		ensure(MAX_LENGTH + 1);
+		if (v == Long.MIN_VALUE) {
+			for (byte b : Long.toString(v).getBytes())
+				buffer[position++] = b;
+		} else {
+			if (v < 0) {
+				buffer[position++] = '-';
+				v = -v;
+			}
+			int k = 0;
+			do {
+				digits[k++] = (byte) ('0' + (v % 10));
+				v /= 10;
+			} while (v != 0);
+			while (k > 0)
+				buffer[position++] = digits[--k];
+		}
+		buffer[position++] = ';';
+	}
+}
@@ -0,0 +1,107 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.Arrays;
+
+/**
+ * @version 1.0
+ * 
+ *          Links stored in a n x n matrix of bytes (n^2 bytes).
+ */
+public class DenseLinkMatrix implements LinkMatrix {
+
+	private byte[][] links;
+
+	public DenseLinkMatrix(int n) {
+		this(new byte[n][n]);
+	}
+
+	public DenseLinkMatrix(byte[][] links) {
+		this.links = links;
+	}
+
+	public byte[][] getLinks() {
+		return links;
+	}
+
+	@Override
+	public int size() {
+		return links.length;
+	}
+
+	@Override
+	public boolean isLinked(int i, int j) {
+		return links[i][j] == 1;
+	}
+
+	@Override
+	public void link(int i, int j) {
+		links[i][j] = 1;
+	}
+
+	@Override
+	public void unlink(int i, int j) {
+		links[i][j] = 0;
+	}
+
+	@Override
+	public void clear() {
+		for (byte[] row : links)
+			Arrays.fill(row, (byte) 0);
+	}
+
+	@Override
+	public int[] neighbours(int i) {
+		byte[] row = links[i];
+		int[] result = new int[row.length];
+		int m = 0;
+		for (int j = 0; j < row.length; j++)
+			if (row[j] == 1)
+				result[m++] = j;
+		return Arrays.copyOf(result, m);
+	}
+
+	@Override
+	public void setSending(int[] sending) {
+	}
+
+	@Override
+	public int consumption(int i, int[] sending) {
+		byte[] row = links[i];
+		int conso = 0;
+		for (int j = 0; j < row.length; j++)
+			conso += row[j] * sending[j];
+		return conso;
+	}
+
+	@Override
+	public LinkMatrix share() {
+		return this;
+	}
+
+	@Override
+	public LinkMatrix copy() {
+		byte[][] copy = new byte[links.length][];
+		for (int i = 0; i < links.length; i++)
+			copy[i] = links[i].clone();
+		return new DenseLinkMatrix(copy);
+	}
+}
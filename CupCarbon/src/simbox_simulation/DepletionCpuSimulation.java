@@ -0,0 +1,194 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.io.IOException;
+
+import device.Device;
+
+/**
+ * @version 1.0
+ *
+ *          Version of CpuSimulation where the death of a sensor is an event :
+ *          the time advances to the next end of instruction or to the next
+ *          time when a sensor has no more energy (computed from its current
+ *          consumption), so the lifetimes are exact (the energy of a sensor
+ *          does not go far below 0 before it is stopped).
+ *
+ *          The next event of each sensor (absolute time) is kept in an
+ *          IndexedMinHeap. The energy of a sensor is only updated when its
+ *          consumption changes (a linked sensor starts or stops sending) or
+ *          when it has an event, so an iteration only visits the sensors of
+ *          the event and the sensors linked to them.
+ *
+ *          Without mobility and in discrete event mode only (otherwise the
+ *          simulation of CpuSimulation is used).
+ */
+public class DepletionCpuSimulation extends CpuSimulation {
+
+	// For each sensor, the sensors that receive what it sends
+	private int[][] receivers;
+	// Absolute time of the end of the current instruction
+	private long[] deadline;
+	private IndexedMinHeap heap;
+
+	public DepletionCpuSimulation() {
+		super();
+	}
+
+	public DepletionCpuSimulation(SimulationContext context) {
+		super(context);
+	}
+
+	@Override
+	public void simulate() {
+		if (mobility || !discreteEvent) {
+			super.simulate();
+			return;
+		}
+		listener.stateChanged("Simulation : initialization ...");
+		System.out.println("Initialization ... ");
+		receivers = receivers(links, nbSensors);
+		deadline = new long[nbSensors];
+		since = new long[nbSensors];
+		rate = new int[nbSensors];
+		heap = new IndexedMinHeap(nbSensors);
+		for (int i = 0; i < nbSensors; i++) {
+			energy[i] = energyMax;
+			deadline[i] = script[i][0][1];
+			deadSensor[i] = (energy[i] > 0) ? 0 : 1;
+			sending[i] = script[i][0][0] * (1 - deadSensor[i]);
+		}
+		links.setSending(sending);
+		for (int i = 0; i < nbSensors; i++) {
+			rate[i] = links.consumption(i, sending) * eRTx;
+			if (deadSensor[i] == 0)
+				heap.put(i, nextTime(i));
+		}
+		System.out.println("End of Initialization.");
+		long time = 0;
+		long startTime = System.currentTimeMillis();
+		System.out.println("Start Simulation (CPU : D-Event, depletion) ... ");
+		long iter = 0;
+		listener.stateChanged("Simulation : End of initialization.");
+		listener.stateChanged("Simulate (CPU) ...");
+
+		// The frames need the energies of all the sensors
+		boolean frames = (context.getResultsPath() != null);
+		int[] fired = new int[nbSensors];
+		try {
+			ResultSink results = context.newResultSink("");
+			int[] frame = new int[nbSensors];
+			for (iter = 0; (iter < iterNumber) && (!heap.isEmpty()); iter++) {
+				if (frames) {
+					frame(time, frame);
+					results.write(time, frame, event);
+				}
+				time = heap.peekKey();
+
+				// The sensors of the event
+				int nbFired = 0;
+				while (heap.peekKey() == time)
+					fired[nbFired++] = heap.poll();
+				for (int k = 0; k < nbFired; k++) {
+					int i = fired[k];
+					update(i, time);
+					if (energy[i] <= 0) {
+						energy[i] = 0;
+						deadSensor[i] = 1;
+					} else if (deadline[i] == time) {
+						iscript[i]++;
+						iscript[i] = (byte) (iscript[i] % scriptSize);
+						deadline[i] += script[i][iscript[i]][1];
+					}
+				}
+
+				// New consumptions of the sensors that receive them
+				for (int k = 0; k < nbFired; k++) {
+					int i = fired[k];
+					int s = script[i][iscript[i]][0] * (1 - deadSensor[i]);
+					if (s == sending[i])
+						continue;
+					int delta = (s - sending[i]) * eRTx;
+					sending[i] = s;
+					for (int j : receivers[i]) {
+						if (deadSensor[j] == 1)
+							continue;
+						update(j, time);
+						rate[j] += delta;
+						if (heap.contains(j))
+							heap.put(j, nextTime(j));
+					}
+				}
+				for (int k = 0; k < nbFired; k++) {
+					int i = fired[k];
+					if (deadSensor[i] == 0)
+						heap.put(i, nextTime(i));
+				}
+				listener.progressChanged((int) (1000 * iter / iterNumber));
+			}
+			if (frames)
+				frame(time, frame);
+			results.close(time, frame, event);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		frame(time, energy);
+		iterations = iter;
+		long endTime = System.currentTimeMillis();
+		System.out.println("End of Simulation (CPU : D-Event, depletion).");
+		System.out.println(((endTime - startTime) / 1000.) + " sec");
+		listener.stateChanged("End (CPU Sim) at iter " + iter
+				+ ". Simulation Time : " + ((endTime - startTime) / 1000.)
+				+ " sec.");
+		listener.progressChanged(0);
+		if (isUpdateDevices()) {
+			int i = 0;
+			for (Device d : devices) {
+				d.getBattery().setCapacity(energy[i++]);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Next event of the sensor i : end of its instruction or the first
+	// time when its energy is <= 0
+	// ------------------------------------------------------------
+	private long nextTime(int i) {
+		if (rate[i] <= 0)
+			return deadline[i];
+		return Math.min(deadline[i], depletion(i, rate[i]));
+	}
+
+	// ------------------------------------------------------------
+	// Energies and remaining times of the instructions at the time t
+	// ------------------------------------------------------------
+	private void frame(long t, int[] frame) {
+		for (int i = 0; i < nbSensors; i++) {
+			if (deadSensor[i] == 1) {
+				frame[i] = energy[i];
+				event[i] = 99999999;
+			} else {
+				frame[i] = energy[i] - (int) (rate[i] * (t - since[i]));
+				event[i] = (int) (deadline[i] - t);
+			}
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.Arrays;
+
+/**
+ * @version 1.0
+ *
+ *          Fast-forward of the CPU simulation without mobility. The script of
+ *          each sensor is a cycle of duration L(i) (sum of the durations of
+ *          its instructions), so the state of the network (instructions and
+ *          remaining times of the alive sensors) repeats every LCM of the
+ *          L(i), until a sensor dies.
+ *
+ *          The state and the energies are saved at the start of a cycle. At
+ *          the end of the cycle, if the state is the same and no sensor has
+ *          died, the energy consumed by each sensor during one cycle is known
+ *          and the simulation jumps directly over as many cycles as possible
+ *          without any death. The death is then simulated normally, and a new
+ *          cycle is detected (the period can change when sensors die).
+ */
+public class FastForward {
+
+	// Over this period, the cycle is not detected
+	public static final long MAX_PERIOD = Integer.MAX_VALUE;
+
+	private int[][][] script;
+	private int scriptSize;
+	private int nbSensors;
+
+	// Start of the current cycle (period == 0 : no cycle)
+	private long period = 0;
+	private long cycleIterations = 0;
+	private long startTime;
+	private long startIter;
+	private int[] startEnergy;
+	private int[] startEvent;
+	private byte[] startIscript;
+	private int[] startDead;
+
+	// Number of cycles and iterations jumped
+	private long cycles = 0;
+	private long jumpedIterations = 0;
+
+	public FastForward(int[][][] script, int scriptSize, int nbSensors) {
+		this.script = script;
+		this.scriptSize = scriptSize;
+		this.nbSensors = nbSensors;
+		startEnergy = new int[nbSensors];
+		startEvent = new int[nbSensors];
+		startIscript = new byte[nbSensors];
+		startDead = new int[nbSensors];
+	}
+
+	/**
+	 * Start a new cycle from the current state (at the end of an iteration)
+	 *
+	 * @param time
+	 * @param iter
+	 *            Number of iterations done
+	 * @param energy
+	 * @param event
+	 * @param iscript
+	 * @param deadSensor
+	 */
+	public void start(long time, long iter, int[] energy, int[] event,
+			byte[] iscript, int[] deadSensor) {
+		period = period(deadSensor);
+		startTime = time;
+		startIter = iter;
+		System.arraycopy(energy, 0, startEnergy, 0, nbSensors);
+		System.arraycopy(event, 0, startEvent, 0, nbSensors);
+		System.arraycopy(iscript, 0, startIscript, 0, nbSensors);
+		System.arraycopy(deadSensor, 0, startDead, 0, nbSensors);
+	}
+
+	/**
+	 * Called at the end of each iteration. At the end of a cycle, the
+	 * energies are decreased by the consumption of the cycles that can be
+	 * jumped and a new cycle is started.
+	 *
+	 * @param time
+	 * @param iter
+	 *            Number of iterations done
+	 * @param maxIter
+	 *            The simulation stops after maxIter iterations
+	 * @param energy
+	 * @param event
+	 * @param iscript
+	 * @param deadSensor
+	 * @return the number of cycles jumped (the time advances of cycles *
+	 *         getPeriod() and the iterations of cycles * getCycleIterations())
+	 */
+	public long check(long time, long iter, long maxIter, int[] energy,
+			int[] event, byte[] iscript, int[] deadSensor) {
+		if (period == 0 || time < startTime + period) {
+			if (period == 0 && !Arrays.equals(deadSensor, startDead))
+				start(time, iter, energy, event, iscript, deadSensor);
+			return 0;
+		}
+		if (time > startTime + period
+				|| !sameState(event, iscript, deadSensor)) {
+			start(time, iter, energy, event, iscript, deadSensor);
+			return 0;
+		}
+
+		// Number of cycles before the first death
+		cycleIterations = iter - startIter;
+		long k = (maxIter - iter) / cycleIterations;
+		for (int i = 0; i < nbSensors && k > 0; i++) {
+			int drain = startEnergy[i] - energy[i];
+			if (deadSensor[i] == 0 && drain > 0)
+				k = Math.min(k, (energy[i] - 1) / drain);
+		}
+		if (k > 0) {
+			for (int i = 0; i < nbSensors; i++)
+				energy[i] -= (int) (k * (startEnergy[i] - energy[i]));
+			cycles += k;
+			jumpedIterations += k * cycleIterations;
+		}
+		start(time + k * period, iter + k * cycleIterations, energy, event,
+				iscript, deadSensor);
+		return k;
+	}
+
+	/**
+	 * @return the period of the current cycle (0 if there is no cycle)
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @return the number of iterations of the last cycle detected
+	 */
+	public long getCycleIterations() {
+		return cycleIterations;
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	public long getJumpedIterations() {
+		return jumpedIterations;
+	}
+
+	// ------------------------------------------------------------
+	// Same instructions and remaining times for the alive sensors
+	// ------------------------------------------------------------
+	private boolean sameState(int[] event, byte[] iscript, int[] deadSensor) {
+		for (int i = 0; i < nbSensors; i++) {
+			if (deadSensor[i] != startDead[i])
+				return false;
+			if (deadSensor[i] == 0
+					&& (event[i] != startEvent[i]
+							|| iscript[i] != startIscript[i]))
+				return false;
+		}
+		return true;
+	}
+
+	// ------------------------------------------------------------
+	// LCM of the durations of the scripts of the alive sensors (0 if it
+	// is too long)
+	// ------------------------------------------------------------
+	private long period(int[] deadSensor) {
+		long lcm = 1;
+		for (int i = 0; i < nbSensors; i++) {
+			if (deadSensor[i] == 1)
+				continue;
+			long length = 0;
+			for (int j = 0; j < scriptSize; j++)
+				length += script[i][j][1];
+			if (length <= 0)
+				return 0;
+			lcm = lcm / gcd(lcm, length) * length;
+			if (lcm > MAX_PERIOD)
+				return 0;
+		}
+		return lcm;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
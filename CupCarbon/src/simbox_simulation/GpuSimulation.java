@@ -19,56 +19,17 @@
 
 package simbox_simulation;
 
-import static org.jocl.CL.CL_CONTEXT_DEVICES;
-import static org.jocl.CL.CL_CONTEXT_PLATFORM;
-import static org.jocl.CL.CL_DEVICE_MAX_COMPUTE_UNITS;
-import static org.jocl.CL.CL_DEVICE_TYPE_CPU;
-import static org.jocl.CL.CL_DEVICE_TYPE_GPU;
-import static org.jocl.CL.CL_MEM_COPY_HOST_PTR;
-import static org.jocl.CL.CL_MEM_READ_ONLY;
-import static org.jocl.CL.CL_MEM_READ_WRITE;
-import static org.jocl.CL.CL_PROGRAM_BUILD_LOG;
-import static org.jocl.CL.CL_QUEUE_PROFILING_ENABLE;
-import static org.jocl.CL.CL_SUCCESS;
-import static org.jocl.CL.CL_TRUE;
-import static org.jocl.CL.clBuildProgram;
-import static org.jocl.CL.clCreateBuffer;
-import static org.jocl.CL.clCreateCommandQueue;
-import static org.jocl.CL.clCreateContextFromType;
-import static org.jocl.CL.clCreateKernel;
-import static org.jocl.CL.clCreateProgramWithSource;
-import static org.jocl.CL.clEnqueueNDRangeKernel;
-import static org.jocl.CL.clEnqueueReadBuffer;
-import static org.jocl.CL.clGetContextInfo;
-import static org.jocl.CL.clGetDeviceInfo;
-import static org.jocl.CL.clGetPlatformIDs;
-import static org.jocl.CL.clGetProgramBuildInfo;
-import static org.jocl.CL.clReleaseMemObject;
-import static org.jocl.CL.clSetKernelArg;
-
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ListIterator;
 
 import map.Layer;
-
-import org.jocl.Pointer;
-import org.jocl.Sizeof;
-import org.jocl.cl_command_queue;
-import org.jocl.cl_context;
-import org.jocl.cl_context_properties;
-import org.jocl.cl_device_id;
-import org.jocl.cl_kernel;
-import org.jocl.cl_mem;
-import org.jocl.cl_platform_id;
-import org.jocl.cl_program;
-
 import project.Project;
-import cupcarbon.WsnSimulationWindow;
 import device.Device;
 import device.DeviceList;
+import device.SpatialIndex;
 
 /**
  * @author Ahcene Bounceur
@@ -81,25 +42,16 @@ public class GpuSimulation extends Thread {
 	private int step = 1 ;
 	private int energyMax;
 	private int iterNumber;
+	private long iterations = 0;
 	private int scriptSize;
-	private int nbCore;
 	private int[] nbSensors;
-	private int[] scriptSizeBuffer;
 	private int[] min;
 	private int[] energy;
 	private byte[] deadSensor;
 	private int[] stopCondition;
 	private int [] mobility = {0};
-	
-	private cl_context context;
-	private cl_context_properties contextProperties;
-	private cl_platform_id[] platformIDs;
-	private cl_device_id[] devices;
-
-	private cl_mem[] memNextInstruction;
-	private cl_mem[] memConsumption;
-	private cl_mem[] memStopCondition;
 
+	private SimulationKernel kernel;
 	private byte[] links;
 	private int[] script;
 	private int[] event;
@@ -107,31 +59,15 @@ public class GpuSimulation extends Thread {
 	private int[] operationType;
 	private int[] scriptIndex;
 
-	private cl_command_queue commandQueue;
-
-	private cl_kernel kernelNextInstruction;
-	private cl_kernel kernelConsumption;
-	private cl_kernel kernelStopCondition;
-
-	private cl_program programNextInstruction;
-	private cl_program programConsumption;
-	private cl_program programStopCondition;
-
-	private Pointer pMin;
-	private Pointer pEvent;
-	private Pointer pEvent2;
-	private Pointer pScript;
-	private Pointer pScriptIndex;
-	private Pointer pOperationType;
-	private Pointer pLinks;
-	private Pointer pEnergy;
-	private Pointer pDeadSensor;
-	private Pointer pStopCondition;
-	private Pointer pNbSensors;
-	private Pointer pScriptSizeBuffer;
-
 	private boolean visual;
 	private int visualDelay;
+
+	// Without mobility : absolute times of the ends of the instructions
+	// (the sensors of fired read their next instruction in nextInstruction)
+	private IndexedMinHeap events;
+	private int[] fired;
+	private int nbFired;
+	private boolean deadFound;
 	
 	// ------------------------------------------------------------
 	// Constructor
@@ -155,19 +91,13 @@ public class GpuSimulation extends Thread {
 		
 		SimulationInputs.script = null;
 		SimulationInputs.links = null;
+		SimulationInputs.linkMatrix = null;
 		script = SimulationInputs.gpuScript;
 		links = SimulationInputs.gpuLinks;
 
 		scriptSize = SimulationInputs.scriptSize;
 
-		if (nbSensors[0] > 8)
-			nbCore = nbSensors[0] / 8;
-		else
-			nbCore = 4;
-
 		min = new int[1];
-		scriptSizeBuffer = new int[1];
-		scriptSizeBuffer[0] = scriptSize;
 
 		event = new int[nbSensors[0]];
 		event2 = new int[nbSensors[0]];
@@ -175,8 +105,6 @@ public class GpuSimulation extends Thread {
 		operationType = new int[nbSensors[0]];
 		scriptIndex = new int[nbSensors[0]];
 
-		pNbSensors = Pointer.to(nbSensors);
-		pScriptSizeBuffer = Pointer.to(scriptSizeBuffer);
 
 		energy = new int[nbSensors[0]];
 
@@ -201,31 +129,6 @@ public class GpuSimulation extends Thread {
 
 	}
 
-	// ------------------------------------------------------------
-	// Release
-	// ------------------------------------------------------------
-	public void release() {
-		clReleaseMemObject(memNextInstruction[0]);
-		clReleaseMemObject(memNextInstruction[1]);
-		clReleaseMemObject(memNextInstruction[2]);
-		clReleaseMemObject(memNextInstruction[3]);
-		clReleaseMemObject(memNextInstruction[4]);
-		clReleaseMemObject(memNextInstruction[5]);
-		clReleaseMemObject(memNextInstruction[6]);
-
-		clReleaseMemObject(memConsumption[0]);
-		clReleaseMemObject(memConsumption[1]);
-		clReleaseMemObject(memConsumption[2]);
-		clReleaseMemObject(memConsumption[3]);
-		clReleaseMemObject(memConsumption[4]);
-		clReleaseMemObject(memConsumption[5]);
-		clReleaseMemObject(memConsumption[6]);
-		clReleaseMemObject(memConsumption[7]);
-
-		clReleaseMemObject(memStopCondition[0]);
-		clReleaseMemObject(memStopCondition[1]);
-	}
-
 	// ------------------------------------------------------------
 	// Display the energy vector
 	// ------------------------------------------------------------
@@ -259,299 +162,43 @@ public class GpuSimulation extends Thread {
 	}
 
 	// ------------------------------------------------------------
-	// getInt
-	// ------------------------------------------------------------
-	private int getInt(cl_device_id device, int paramName) {
-		return getInts(device, paramName, 1)[0];
-	}
-
-	// ------------------------------------------------------------
-	// getInts
-	// ------------------------------------------------------------
-	private int[] getInts(cl_device_id device, int paramName, int numValues) {
-		int values[] = new int[numValues];
-		clGetDeviceInfo(device, paramName, Sizeof.cl_int * numValues,
-				Pointer.to(values), null);
-		return values;
-	}
-
-	// ------------------------------------------------------------
-	// getPlatform
-	// ------------------------------------------------------------
-	public int getPlatform() {
-		platformIDs = new cl_platform_id[1];
-		clGetPlatformIDs(platformIDs.length, platformIDs, null);
-
-		contextProperties = new cl_context_properties();
-		contextProperties.addProperty(CL_CONTEXT_PLATFORM, platformIDs[0]);
-
-		context = clCreateContextFromType(contextProperties, CL_DEVICE_TYPE_GPU, null, null, null);
-		if (context == null) {
-			context = clCreateContextFromType(contextProperties, CL_DEVICE_TYPE_CPU, null, null, null);
-			if (context == null) {
-				System.out.println("Unable to create a context");
-				return -1;
-			}
+	// Next event without mobility (after nextInstruction) : the new
+	// instructions of the sensors that have been fired are added to the
+	// heap and the time of the next event is the smallest key. The sensors
+	// of this event are fired at the next iteration (their event reaches 0
+	// in consumption).
+	// ------------------------------------------------------------
+	private int nextEvent(long time) {
+		for (int k = 0; k < nbFired; k++) {
+			int i = fired[k];
+			if (deadSensor[i] == 1) {
+				events.remove(i);
+				deadFound = true;
+			} else
+				events.put(i, time + event[i]);
 		}
-
-		long numBytes[] = new long[1];
-
-		clGetContextInfo(context, CL_CONTEXT_DEVICES, 0, null, numBytes);
-
-		int numDevices = (int) numBytes[0] / Sizeof.cl_device_id;
-		devices = new cl_device_id[numDevices];
-
-		clGetContextInfo(context, CL_CONTEXT_DEVICES, numBytes[0],
-				Pointer.to(devices), null);
-
-		int maxComputeUnits = getInt(devices[0], CL_DEVICE_MAX_COMPUTE_UNITS);
-		System.out.printf("CL_DEVICE_MAX_COMPUTE_UNITS:\t\t%d\n",
-				maxComputeUnits);
-
-		return 0;
-	}
-
-	// ------------------------------------------------------------
-	// Create command queue
-	// ------------------------------------------------------------
-	public void createCommandeQueue() {
-		commandQueue = clCreateCommandQueue(context, devices[0],
-				CL_QUEUE_PROFILING_ENABLE, null);
-	}
-
-	// ------------------------------------------------------------
-	// Create the program of the next instruction
-	// ------------------------------------------------------------
-	public int createProgramNextInstruction() {
-		String programSource = OpenCLScriptLoader.loadNextInstructionOCLScript();
-
-		programNextInstruction = clCreateProgramWithSource(context, 1, new String[] { programSource }, null, null);
-
-		int stat = clBuildProgram(programNextInstruction, 0, null, null, null,null);
-
-		if (stat != CL_SUCCESS) {
-			System.out.println("ERREUR");
-			char buildLog[] = new char[16384];
-			clGetProgramBuildInfo(programNextInstruction, devices[0],
-					CL_PROGRAM_BUILD_LOG, 16384, Pointer.to(buildLog), null);
-			return -1;
+		// The dead sensors are removed when they reach the top
+		while (!events.isEmpty() && deadSensor[events.peek()] == 1) {
+			events.remove(events.peek());
+			deadFound = true;
 		}
-		return 0;
-	}
-
-	// ------------------------------------------------------------
-	// Create the programe of the consumption
-	// ------------------------------------------------------------
-	public int createProgramConsumption() {
-		String programSource = OpenCLScriptLoader.loadConsumptionOCLScript();
-		programConsumption = clCreateProgramWithSource(context, 1,
-				new String[] { programSource }, null, null);
-
-		int stat = clBuildProgram(programConsumption, 0, null, null, null, null);
-
-		if (stat != CL_SUCCESS) {
-			System.out.println("ERREUR");
-			char buildLog[] = new char[16384];
-			clGetProgramBuildInfo(programConsumption, devices[0],
-					CL_PROGRAM_BUILD_LOG, 16384, Pointer.to(buildLog), null);
-			return -1;
+		// The dead sensors have an event in 9999999
+		long next = events.peekKey() - time;
+		if (next > 9999999 && (deadFound || hasDeadSensor())) {
+			deadFound = true;
+			next = 9999999;
 		}
-		return 0;
+		nbFired = 0;
+		while (events.peekKey() == time + next)
+			fired[nbFired++] = events.poll();
+		return (int) next;
 	}
 
-	// ------------------------------------------------------------
-	// Create the program of the stop condition
-	// ------------------------------------------------------------
-	public int createProgramStopCondition() {
-		String programSource = OpenCLScriptLoader.loadStopConditionOCLScript();
-		programStopCondition = clCreateProgramWithSource(context, 1,
-				new String[] { programSource }, null, null);
-
-		int stat = clBuildProgram(programStopCondition, 0, null, null, null,
-				null);
-
-		if (stat != CL_SUCCESS) {
-			System.out.println("ERREUR");
-			char buildLog[] = new char[16384];
-			clGetProgramBuildInfo(programStopCondition, devices[0],
-					CL_PROGRAM_BUILD_LOG, 16384, Pointer.to(buildLog), null);
-			return -1;
-		}
-		return 0;
-	}
-
-	// ------------------------------------------------------------
-	// Create kernels
-	// ------------------------------------------------------------
-	public void createKernels() {
-		kernelNextInstruction = clCreateKernel(programNextInstruction,
-				"sampleKernel", null);
-		kernelConsumption = clCreateKernel(programConsumption, "sampleKernel",
-				null);
-		kernelStopCondition = clCreateKernel(programStopCondition,
-				"sampleKernel", null);
-	}
-
-	// ------------------------------------------------------------
-	// Create the buffer of the next instruction
-	// ------------------------------------------------------------
-	public void createBufferNextInstruction() {
-		pEvent = Pointer.to(event);
-		pScript = Pointer.to(script);
-		pScriptIndex = Pointer.to(scriptIndex);
-		pOperationType = Pointer.to(operationType);
-		pDeadSensor = Pointer.to(deadSensor);
-		pEnergy = Pointer.to(energy);
-
-		memNextInstruction = new cl_mem[7];
-
-		memNextInstruction[0] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pEvent,
-				null);
-		memNextInstruction[1] = clCreateBuffer(context, CL_MEM_READ_ONLY
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0]
-				* scriptSize * 2, pScript, null);
-		memNextInstruction[2] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0],
-				pScriptIndex, null);
-		memNextInstruction[3] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0],
-				pOperationType, null);
-		memNextInstruction[4] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * 1, pScriptSizeBuffer,
-				null);
-		memNextInstruction[5] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_char * nbSensors[0],
-				pDeadSensor, null);
-		memNextInstruction[6] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pEnergy,
-				null);
-	}
-
-	// ------------------------------------------------------------
-	// Create the kernel of the next instruction 
-	// ------------------------------------------------------------
-	public void setKernelNextInstructionArg() {
-		clSetKernelArg(kernelNextInstruction, 0, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[0]));
-		clSetKernelArg(kernelNextInstruction, 1, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[1]));
-		clSetKernelArg(kernelNextInstruction, 2, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[2]));
-		clSetKernelArg(kernelNextInstruction, 3, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[3]));
-		clSetKernelArg(kernelNextInstruction, 4, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[4]));
-		clSetKernelArg(kernelNextInstruction, 5, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[5]));
-		clSetKernelArg(kernelNextInstruction, 6, Sizeof.cl_mem,
-				Pointer.to(memNextInstruction[6]));
-	}
-
-	// ------------------------------------------------------------
-	// Launch the kernel of the next instruction
-	// ------------------------------------------------------------
-	public void launchKernelNextInstruction() {
-		long global_work_size_NEXT[] = new long[] { nbSensors[0] };
-		long local_work_size_NEXT[] = new long[] { nbCore };
-		clEnqueueNDRangeKernel(commandQueue, kernelNextInstruction, 1, null,
-				global_work_size_NEXT, local_work_size_NEXT, 0, null, null);
-
-		clEnqueueReadBuffer(commandQueue, memNextInstruction[0], CL_TRUE, 0,
-				nbSensors[0] * Sizeof.cl_int, pEvent, 0, null, null);
-		clEnqueueReadBuffer(commandQueue, memNextInstruction[2], CL_TRUE, 0,
-				nbSensors[0] * Sizeof.cl_int, pScriptIndex, 0, null, null);
-		clEnqueueReadBuffer(commandQueue, memNextInstruction[3], CL_TRUE, 0,
-				nbSensors[0] * Sizeof.cl_int, pOperationType, 0, null, null);
-		clEnqueueReadBuffer(commandQueue, memNextInstruction[5], CL_TRUE, 0,
-				nbSensors[0] * Sizeof.cl_char, pDeadSensor, 0, null, null);
-	}
-
-	// ------------------------------------------------------------
-	// Create the buffer of the consumption 
-	// ------------------------------------------------------------
-	public void createBufferConsumption(Boolean first) {
-		memConsumption = new cl_mem[8];
-		pLinks = Pointer.to(links);
-		pEnergy = Pointer.to(energy);
-		pMin = Pointer.to(min);
-		pEvent = Pointer.to(event);
-		pEvent2 = Pointer.to(event2);
-
-		memConsumption[1] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, Sizeof.cl_int, pMin, null);
-		memConsumption[2] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pOperationType, null);
-		if (first) {
-			memConsumption[0] = clCreateBuffer(context, CL_MEM_READ_ONLY | CL_MEM_COPY_HOST_PTR, Sizeof.cl_char * nbSensors[0] * nbSensors[0], pLinks, null);
-			memConsumption[3] = clCreateBuffer(context, CL_MEM_READ_WRITE | CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pEnergy, null);
-			memConsumption[4] = clCreateBuffer(context, CL_MEM_READ_WRITE | CL_MEM_COPY_HOST_PTR, Sizeof.cl_char * nbSensors[0], pDeadSensor, null);
-			memConsumption[5] = clCreateBuffer(context, CL_MEM_READ_WRITE | CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pNbSensors, null);
-			memConsumption[6] = clCreateBuffer(context, CL_MEM_READ_WRITE | CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pEvent, null);
-			memConsumption[7] = clCreateBuffer(context, CL_MEM_READ_WRITE | CL_MEM_COPY_HOST_PTR, Sizeof.cl_int * nbSensors[0], pEvent2, null);
-		}
-	}
-
-	// ------------------------------------------------------------
-	// Set the kernel of the consumption Args
-	// ------------------------------------------------------------
-	public void setKernelConsumptionArg(Boolean first) {
-		clSetKernelArg(kernelConsumption, 1, Sizeof.cl_mem, Pointer.to(memConsumption[1]));
-		clSetKernelArg(kernelConsumption, 2, Sizeof.cl_mem, Pointer.to(memConsumption[2]));
-		if (first) {
-			clSetKernelArg(kernelConsumption, 0, Sizeof.cl_mem, Pointer.to(memConsumption[0]));
-			clSetKernelArg(kernelConsumption, 3, Sizeof.cl_mem, Pointer.to(memConsumption[3]));
-			clSetKernelArg(kernelConsumption, 4, Sizeof.cl_mem, Pointer.to(memConsumption[4]));
-			clSetKernelArg(kernelConsumption, 5, Sizeof.cl_mem, Pointer.to(memConsumption[5]));
-			clSetKernelArg(kernelConsumption, 6, Sizeof.cl_mem, Pointer.to(memConsumption[6]));
-			clSetKernelArg(kernelConsumption, 7, Sizeof.cl_mem, Pointer.to(memConsumption[7]));
-		}
-	}
-
-	// ------------------------------------------------------------
-	// Launch the kerlnel of the consumption 
-	// ------------------------------------------------------------
-	public void launchKernelConsumption() {
-		long global_work_size_2[] = new long[] { nbSensors[0] };
-		long local_work_size_2[] = new long[] { nbCore };
-		clEnqueueNDRangeKernel(commandQueue, kernelConsumption, 1, null, global_work_size_2, local_work_size_2, 0, null, null);
-
-		clEnqueueReadBuffer(commandQueue, memConsumption[3], CL_TRUE, 0, nbSensors[0] * Sizeof.cl_int, pEnergy, 0, null, null);
-		clEnqueueReadBuffer(commandQueue, memConsumption[6], CL_TRUE, 0, nbSensors[0] * Sizeof.cl_int, pEvent, 0, null, null);
-		clEnqueueReadBuffer(commandQueue, memConsumption[7], CL_TRUE, 0, nbSensors[0] * Sizeof.cl_int, pEvent2, 0, null, null);
-	}
-
-	// ------------------------------------------------------------
-	// Create the final buffer
-	// ------------------------------------------------------------
-	public void createBufferFinal() {
-		memStopCondition = new cl_mem[2];
-		pStopCondition = Pointer.to(stopCondition);
-		memStopCondition[0] = clCreateBuffer(context, CL_MEM_READ_ONLY
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_char * nbSensors[0],
-				pDeadSensor, null);
-		memStopCondition[1] = clCreateBuffer(context, CL_MEM_READ_WRITE
-				| CL_MEM_COPY_HOST_PTR, Sizeof.cl_int, pStopCondition, null);
-	}
-
-	// ------------------------------------------------------------
-	// Set the kernle of the stop condition
-	// ------------------------------------------------------------
-	public void setKernelStopConditionArg() {
-		clSetKernelArg(kernelStopCondition, 0, Sizeof.cl_mem,
-				Pointer.to(memStopCondition[0]));
-		clSetKernelArg(kernelStopCondition, 1, Sizeof.cl_mem,
-				Pointer.to(memStopCondition[1]));
-	}
-
-	// ------------------------------------------------------------
-	// Launch the final kernel
-	// ------------------------------------------------------------
-	public void launchKernelFinal() {
-		long global_work_size_2[] = new long[] { nbSensors[0] };
-		long local_work_size_2[] = new long[] { nbCore };
-		clEnqueueNDRangeKernel(commandQueue, kernelStopCondition, 1, null,
-				global_work_size_2, local_work_size_2, 0, null, null);
-		clEnqueueReadBuffer(commandQueue, memStopCondition[1], CL_TRUE, 0,
-				Sizeof.cl_int, pStopCondition, 0, null, null);
+	private boolean hasDeadSensor() {
+		for (int i = 0; i < nbSensors[0]; i++)
+			if (deadSensor[i] == 1)
+				return true;
+		return false;
 	}
 
 	// ------------------------------------------------------------
@@ -559,21 +206,16 @@ public class GpuSimulation extends Thread {
 	// ------------------------------------------------------------
 	public void simulate() {
 		System.out.println("Initialization ...");
-		getPlatform();
-		createProgramNextInstruction();
-		createProgramConsumption();
-		createProgramStopCondition();
-		createCommandeQueue();
-		createKernels();
+		kernel = SimulationKernel.newInstance();
+		kernel.init(nbSensors[0], scriptSize, script, links);
 		System.out.println("End of Initialization.");
-		System.out.println("Start Simulation (GPU) ...");
+		System.out.println("Start Simulation (GPU : " + kernel.getName() + ") ...");
 		long startTime = System.currentTimeMillis();
-		boolean first = false;
 		int iter = 0;
 		long time = 0;
 		
-		WsnSimulationWindow.setState("Simulation : End of initialization.");
-		WsnSimulationWindow.setState("Simulate (GPU) ...");
+		SimulationInputs.listener.stateChanged("Simulation : End of initialization.");
+		SimulationInputs.listener.stateChanged("Simulate (GPU) ...");
 		
 		List<Device> devices = DeviceList.getNodes();
 		
@@ -589,43 +231,34 @@ public class GpuSimulation extends Thread {
 
 			int min1;
 			int min2;
+			if (mobility[0] == 0) {
+				// At the first iteration, all the sensors read their first
+				// instruction
+				events = new IndexedMinHeap(nbSensors[0]);
+				fired = new int[nbSensors[0]];
+				for (nbFired = 0; nbFired < nbSensors[0]; nbFired++)
+					fired[nbFired] = nbFired;
+				deadFound = false;
+			}
 			
 			for (iter = 0; (iter < iterNumber) && (!stopSimulation()); iter++) {
-				createBufferNextInstruction();
-				setKernelNextInstructionArg();
-				launchKernelNextInstruction();
-				
+				kernel.nextInstruction(event, scriptIndex, operationType, deadSensor, energy);
 				
 				if (mobility[0]==1) {
-					
-					Device d1 = null;
-					Device d2 = null;
-					ListIterator<Device> iterator;
-					ListIterator<Device> iterator2;
-					iterator = devices.listIterator();
-					int n = devices.size();
-					int ii = 0;
-					int jj = 0;
-					while (iterator.hasNext()) {
-						d1 = iterator.next();						
-						links[ii *n + ii] = 1;
-						if (iterator.nextIndex() < n) {
-							jj = ii + 1;
-							iterator2 = devices.listIterator(iterator.nextIndex());
-							while (iterator2.hasNext()) {
-								d2 = iterator2.next();
-								if (d1.radioDetect(d2)) {
-									links[ii * n + jj] = 1;
-									links[jj * n + ii] = 1;
-								} else {
-									links[ii * n + jj] = 0;
-									links[jj * n + ii] = 0;
-								}
-								jj++;
+					// Only the close devices (spatial index) are tested
+					SpatialIndex index = DeviceList.getSpatialIndex();
+					int n = index.size();
+					Arrays.fill(links, (byte) 0);
+					for (int ii = 0; ii < n; ii++) {
+						Device d1 = index.getDevice(ii);
+						links[ii * n + ii] = 1;
+						for (int jj : index.candidates(ii, index.getRadioRange())) {
+							if (jj > ii && d1.radioDetect(index.getDevice(jj))) {
+								links[ii * n + jj] = 1;
+								links[jj * n + ii] = 1;
 							}
-							ii++;
 						}
-					}					
+					}
 					if (discreteEvent) {
 						min1 = getMin();
 						min2 = getMin2();
@@ -638,22 +271,12 @@ public class GpuSimulation extends Thread {
 					}
 				}
 				else 
-					min[0] = getMin();
+					min[0] = nextEvent(time);
 
 				time += min[0];
 
-				if (iter == 0)
-					first = true;
-				
-				createBufferConsumption(first);
-				setKernelConsumptionArg(first);
-				launchKernelConsumption();
-
-				createBufferFinal();
-				setKernelStopConditionArg();
-				launchKernelFinal();
-
-				release();
+				kernel.consumption(min[0], operationType, energy, deadSensor, event, event2);
+				stopCondition[0] = kernel.stopCondition(deadSensor);
 				
 				for (int i = 0; i < nbSensors[0]; i++) {
 					if (mobility[0]==1)
@@ -670,20 +293,23 @@ public class GpuSimulation extends Thread {
 					ps.print(energy[i] + ";");
 				}
 				ps.println();
-				WsnSimulationWindow.setProgress((int)(1000*iter/iterNumber));
+				SimulationInputs.listener.progressChanged((int)(1000*iter/iterNumber));
 			}
 			ps.close();
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			kernel.release();
 		}
 
 		long endTime = System.currentTimeMillis();
 		System.out.println(iter);
+		iterations = iter;
 		System.out.println("End of Simulation (GPU).");
 		System.out.println(((endTime - startTime) / 1000.) + " sec");
-		WsnSimulationWindow.setState("End (GPU Sim) at iter " + iter + ". Simulation Time : "
+		SimulationInputs.listener.stateChanged("End (GPU Sim) at iter " + iter + ". Simulation Time : "
 				+ ((endTime - startTime) / 1000.) + " sec.");
-		WsnSimulationWindow.setProgress(0);
+		SimulationInputs.listener.progressChanged(0);
 		int i=0;
 		for(Device device : devices) {
 			device.getBattery().setCapacity(energy[i++]);
@@ -714,4 +340,11 @@ public class GpuSimulation extends Thread {
 		return true;
 	}
 
+	/**
+	 * @return the number of iterations done
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.Arrays;
+
+/**
+ * @version 1.0
+ *
+ *          Binary min-heap of the sensors 0..n-1 ordered by a key (the
+ *          absolute time of their next event). The position of each sensor in
+ *          the heap is kept, so the key of a sensor can be changed or the
+ *          sensor can be removed in O(log n). The sensor with the smallest
+ *          key is read in O(1).
+ */
+public class IndexedMinHeap {
+
+	private int[] heap;
+	private int[] position;
+	private long[] keys;
+	private int size = 0;
+
+	/**
+	 * @param n
+	 *            Number of sensors
+	 */
+	public IndexedMinHeap(int n) {
+		heap = new int[n];
+		position = new int[n];
+		keys = new long[n];
+		Arrays.fill(position, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int i) {
+		return position[i] >= 0;
+	}
+
+	/**
+	 * Add the sensor i or change its key
+	 *
+	 * @param i
+	 * @param key
+	 */
+	public void put(int i, long key) {
+		if (position[i] < 0) {
+			keys[i] = key;
+			position[i] = size;
+			heap[size++] = i;
+			up(size - 1);
+		} else if (key < keys[i]) {
+			keys[i] = key;
+			up(position[i]);
+		} else if (key > keys[i]) {
+			keys[i] = key;
+			down(position[i]);
+		}
+	}
+
+	/**
+	 * @param i
+	 *            The sensor removed (if it is in the heap)
+	 */
+	public void remove(int i) {
+		int p = position[i];
+		if (p < 0)
+			return;
+		position[i] = -1;
+		size--;
+		if (p == size)
+			return;
+		int last = heap[size];
+		heap[p] = last;
+		position[last] = p;
+		if (p > 0 && keys[last] < keys[heap[(p - 1) >> 1]])
+			up(p);
+		else
+			down(p);
+	}
+
+	/**
+	 * @return the sensor with the smallest key
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * @return the smallest key (Long.MAX_VALUE if the heap is empty)
+	 */
+	public long peekKey() {
+		return (size == 0) ? Long.MAX_VALUE : keys[heap[0]];
+	}
+
+	/**
+	 * @return the sensor with the smallest key (removed from the heap)
+	 */
+	public int poll() {
+		int i = heap[0];
+		remove(i);
+		return i;
+	}
+
+	/**
+	 * @param i
+	 * @return the key of the sensor i (the last one if it is not in the heap)
+	 */
+	public long getKey(int i) {
+		return keys[i];
+	}
+
+	public void clear() {
+		for (int k = 0; k < size; k++)
+			position[heap[k]] = -1;
+		size = 0;
+	}
+
+	private void up(int p) {
+		int i = heap[p];
+		long key = keys[i];
+		while (p > 0) {
+			int parent = (p - 1) >> 1;
+			int j = heap[parent];
+			if (keys[j] <= key)
+				break;
+			heap[p] = j;
+			position[j] = p;
+			p = parent;
+		}
+		heap[p] = i;
+		position[i] = p;
+	}
+
+	private void down(int p) {
+		int i = heap[p];
+		long key = keys[i];
+		int half = size >> 1;
+		while (p < half) {
+			int child = 2 * p + 1;
+			int j = heap[child];
+			int right = child + 1;
+			if (right < size && keys[heap[right]] < keys[j]) {
+				child = right;
+				j = heap[child];
+			}
+			if (key <= keys[j])
+				break;
+			heap[p] = j;
+			position[j] = p;
+			p = child;
+		}
+		heap[p] = i;
+		position[i] = p;
+	}
+}
@@ -0,0 +1,104 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+/**
+ * @version 1.0
+ * 
+ *          Java version of the OpenCL kernels, used when there is no OpenCL
+ *          device (CPU-only servers). The consumption first computes the
+ *          vector of the alive senders, then each row of the links is read
+ *          with a loop unrolled by 8.
+ */
+public class JavaKernel extends SimulationKernel {
+
+	private int[] active;
+
+	@Override
+	public void init(int nbSensors, int scriptSize, int[] script, byte[] links) {
+		super.init(nbSensors, scriptSize, script, links);
+		active = new int[nbSensors];
+	}
+
+	@Override
+	public void nextInstruction(int[] event, int[] scriptIndex,
+			int[] operationType, byte[] deadSensor, int[] energy) {
+		int lstep = scriptSize;
+		for (int idx = 0; idx < nbSensors; idx++) {
+			if (event[idx] == 0) {
+				int k = idx * lstep * 2 + scriptIndex[idx] * 2;
+				event[idx] = script[k];
+				operationType[idx] = script[k + 1];
+				scriptIndex[idx] = (scriptIndex[idx] + 1) % lstep;
+			}
+			if (energy[idx] <= 0) {
+				event[idx] = 9999999;
+				deadSensor[idx] = 1;
+			}
+		}
+	}
+
+	@Override
+	public void consumption(int min, int[] operationType, int[] energy,
+			byte[] deadSensor, int[] event, int[] event2) {
+		int n = nbSensors;
+		for (int i = 0; i < n; i++)
+			active[i] = operationType[i] * (1 - deadSensor[i]);
+
+		int n8 = n - (n % 8);
+		for (int idx = 0; idx < n; idx++) {
+			int row = idx * n;
+			int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+			int i = 0;
+			for (; i < n8; i += 8) {
+				c0 += links[row + i] * active[i]
+						+ links[row + i + 4] * active[i + 4];
+				c1 += links[row + i + 1] * active[i + 1]
+						+ links[row + i + 5] * active[i + 5];
+				c2 += links[row + i + 2] * active[i + 2]
+						+ links[row + i + 6] * active[i + 6];
+				c3 += links[row + i + 3] * active[i + 3]
+						+ links[row + i + 7] * active[i + 7];
+			}
+			for (; i < n; i++)
+				c0 += links[row + i] * active[i];
+			int consumption = c0 + c1 + c2 + c3;
+
+			energy[idx] = energy[idx] - (consumption * min);
+			if (energy[idx] <= 0)
+				energy[idx] = 0;
+			event[idx] = event[idx] - min;
+			event2[idx] = event2[idx] - min;
+		}
+	}
+
+	@Override
+	public int stopCondition(byte[] deadSensor) {
+		for (int idx = 0; idx < nbSensors; idx++)
+			if (deadSensor[idx] == 1)
+				return 0;
+		return 1;
+	}
+
+	@Override
+	public String getName() {
+		return "Java";
+	}
+}
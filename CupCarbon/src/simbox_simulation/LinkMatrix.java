@@ -0,0 +1,104 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+/**
+ * @version 1.0
+ * 
+ *          Links (radio connections) between the sensors used by the CPU
+ *          simulations. links(i, j) means that the sensor i receives what the
+ *          sensor j sends (a sensor is linked to itself).
+ */
+public interface LinkMatrix {
+
+	/**
+	 * @return the number of sensors
+	 */
+	public int size();
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return if the sensor i is linked to the sensor j
+	 */
+	public boolean isLinked(int i, int j);
+
+	/**
+	 * Link the sensor i to the sensor j (in one direction)
+	 * 
+	 * @param i
+	 * @param j
+	 */
+	public void link(int i, int j);
+
+	/**
+	 * Remove the link of the sensor i to the sensor j (in one direction)
+	 * 
+	 * @param i
+	 * @param j
+	 */
+	public void unlink(int i, int j);
+
+	/**
+	 * Remove all the links
+	 */
+	public void clear();
+
+	/**
+	 * @param i
+	 * @return the sensors to which the sensor i is linked (increasing order)
+	 */
+	public int[] neighbours(int i);
+
+	/**
+	 * Called each time the sending vector has changed, before the
+	 * consumptions are computed (the matrix can prepare it once for all the
+	 * sensors)
+	 * 
+	 * @param sending
+	 *            For each sensor, its consumption if it sends (0 otherwise)
+	 */
+	public void setSending(int[] sending);
+
+	/**
+	 * @param i
+	 *            A sensor
+	 * @param sending
+	 *            For each sensor, its consumption if it sends (0 otherwise)
+	 * @return the sum of the values of sending of the sensors linked to i
+	 */
+	public int consumption(int i, int[] sending);
+
+	/**
+	 * The links are shared (they must not be changed any more), only the
+	 * state prepared by setSending is not shared
+	 * 
+	 * @return a matrix with the same links for another simulation running at
+	 *         the same time
+	 */
+	public LinkMatrix share();
+
+	/**
+	 * @return a matrix with the same links that can be changed without
+	 *         changing this one
+	 */
+	public LinkMatrix copy();
+
+}
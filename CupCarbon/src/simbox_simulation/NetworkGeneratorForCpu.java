@@ -19,17 +19,17 @@
 
 package simbox_simulation;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.List;
 import java.util.ListIterator;
 
 import map.Layer;
-import cupcarbon.WsnSimulationWindow;
+import script.CommandType;
+import script.CompiledScript;
+import script.ScriptCompiler;
 import device.Device;
 import device.DeviceList;
+import device.SpatialIndex;
 
 /**
  * @author Ahcene Bounceur
@@ -45,7 +45,7 @@ public class NetworkGeneratorForCpu extends Thread {
 	// Generate the links and script matrices for the CPU simulation
 	// ------------------------------------------------------------------------
 	public void generate() {
-		WsnSimulationWindow.setState("Network generating ...");
+		SimulationInputs.listener.stateChanged("Network generating ...");
 		System.out.println("Network Generation For CPU ...");
 
 		Layer.getDeviceList().initId();
@@ -54,73 +54,142 @@ public class NetworkGeneratorForCpu extends Thread {
 		Device d2 = null;
 
 		ListIterator<Device> iterator;
-		ListIterator<Device> iterator2;
 
 		List<Device> nodes = DeviceList.getNodes();
+		SpatialIndex index = DeviceList.getSpatialIndex();
 		int n = nodes.size();
 		int scriptSize = SimulationInputs.scriptSize;
 
-		SimulationInputs.links = new byte[n][n];
+		LinkMatrix links;
+		if (SimulationInputs.linkMatrixType == LinkMatrixType.DENSE) {
+			SimulationInputs.links = new byte[n][n];
+			links = new DenseLinkMatrix(SimulationInputs.links);
+		} else if (SimulationInputs.linkMatrixType == LinkMatrixType.BITSET) {
+			// One bit by link : n^2 / 8 bytes
+			SimulationInputs.links = null;
+			links = new BitLinkMatrix(n);
+		} else {
+			// CSR : O(n + links) instead of n^2 bytes
+			SimulationInputs.links = null;
+			links = new SparseLinkMatrix(n);
+		}
+		SimulationInputs.linkMatrix = links;
 		SimulationInputs.script = new int[n][scriptSize][2];
 
 		int i = 0;
-		int j = 0;
 		iterator = nodes.listIterator();
 
-		WsnSimulationWindow.setState("Network Generating for CPU Simulation ...");
-		int iterNumber = n * (n + 1) / 2;
-		int iter = 0;
+		SimulationInputs.listener
+				.stateChanged("Network Generating for CPU Simulation ...");
 		while (iterator.hasNext()) {
 			d1 = iterator.next();
 			d1.getBattery().init(SimulationInputs.energyMax);
-			String s = "";
 			try {
-				System.out.println("---> " + d1.getScriptFileName());
-				BufferedReader br = new BufferedReader(new FileReader(d1.getScriptFileName()));
-				for (int j2 = 0; j2 < scriptSize; j2++) {
-					s = br.readLine();
-					System.out.println(s);
-					String[] inst = s.split(" ");
-					if (inst[0].toLowerCase().equals("psend")) {
-						SimulationInputs.script[i][j2][0] = 1;
-						SimulationInputs.script[i][j2][1] = Integer
-								.parseInt(inst[1]) * 8;
-					}
-					if (inst[0].toLowerCase().equals("delay")) {
-						SimulationInputs.script[i][j2][0] = 0;
-						SimulationInputs.script[i][j2][1] = Integer
-								.parseInt(inst[1]) * Device.dataRate / 1000;
-					}
-				}
-				br.close();
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
+				CompiledScript code = ScriptCompiler.compile(d1
+						.getScriptFileName());
+				for (int j2 = 0; j2 < scriptSize; j2++)
+					instruction(code, j2, SimulationInputs.script[i][j2]);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 
-			SimulationInputs.links[i][i] = 1;
+			links.link(i, i);
 			if (iterator.nextIndex() < n) {
-				j = i + 1;
-				iterator2 = nodes.listIterator(iterator.nextIndex());
-				while (iterator2.hasNext()) {
-					WsnSimulationWindow.setProgress((int) (1000 * (iter++) / iterNumber));
-					d2 = iterator2.next();
+				SimulationInputs.listener.progressChanged((int) (1000 * i / n));
+				// Only the close devices (spatial index) are tested
+				for (int j : index.candidates(i, index.getRadioRange())) {
+					if (j < i)
+						continue;
+					d2 = index.getDevice(j);
 					if (d1.radioDetect(d2)) {
-						SimulationInputs.links[i][j] = 1;
-						SimulationInputs.links[j][i] = 1;
+						links.link(i, j);
+						links.link(j, i);
 					}
-					j++;
 				}
 				i++;
 			}
 		}
 		
-		WsnSimulationWindow.setProgress(0);
+		// The links correspond to the current positions of the devices
+		DeviceList.takeMovedNodes();
+		SimulationInputs.listener.progressChanged(0);
 		SimulationInputs.nbSensors = n;
 		System.out.println("End of network generating.");
-		WsnSimulationWindow.setState("End of network generating.");
+		SimulationInputs.listener.stateChanged("End of network generating.");
 	}
+
+	// ------------------------------------------------------------------------
+	// Update the links of the devices that have been moved (mobility) : the
+	// old links of a moved device are removed, then its new neighbours are
+	// searched with the spatial index. The other links are not changed.
+	// ------------------------------------------------------------------------
+	public static void updateLinks(LinkMatrix links, SpatialIndex index,
+			List<Device> movedDevices) {
+		int n = index.size();
+		int[] moved = new int[movedDevices.size()];
+		boolean[] isMoved = new boolean[n];
+		int m = 0;
+		for (Device device : movedDevices) {
+			int i = index.indexOf(device);
+			if (i >= 0 && i < links.size() && !isMoved[i]) {
+				isMoved[i] = true;
+				moved[m++] = i;
+			}
+		}
+		// The old neighbours are read before any change
+		int[][] oldNeighbours = new int[m][];
+		for (int k = 0; k < m; k++)
+			oldNeighbours[k] = links.neighbours(moved[k]);
+		for (int k = 0; k < m; k++) {
+			int i = moved[k];
+			for (int j : oldNeighbours[k]) {
+				if (j != i) {
+					links.unlink(i, j);
+					links.unlink(j, i);
+				}
+			}
+		}
+		for (int k = 0; k < m; k++) {
+			int i = moved[k];
+			Device d1 = index.getDevice(i);
+			for (int j : index.candidates(i, index.getRadioRange())) {
+				// A link between two moved devices is tested once
+				if (isMoved[j] && j < i)
+					continue;
+				if (d1.radioDetect(index.getDevice(j))) {
+					links.link(i, j);
+					links.link(j, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The instruction k of a compiled script for the SimBox simulations :
+	 * {1, duration} for a psend, {0, duration} for a delay (durations in bits
+	 * at the data rate of the devices). The other instructions are not
+	 * simulated and stay {0, 0}. A script shorter than scriptSize is repeated.
+	 * 
+	 * @param code
+	 * @param k
+	 * @param instruction
+	 *            Receives the type and the duration of the instruction
+	 */
+	public static void instruction(CompiledScript code, int k,
+			int[] instruction) {
+		instruction[0] = 0;
+		instruction[1] = 0;
+		if (code.size() == 0)
+			return;
+		k = k % code.size();
+		if (code.getCommand(k) == CommandType.PSEND) {
+			instruction[0] = 1;
+			instruction[1] = code.getArg(k) * 8;
+		}
+		if (code.getCommand(k) == CommandType.DELAY)
+			instruction[1] = code.getArg(k) * Device.dataRate / 1000;
+	}
+
 	// ------------------------------------------------------------------------
 	// Generate the links and script matrices for the CPU simulation (Thread)
 	// ------------------------------------------------------------------------
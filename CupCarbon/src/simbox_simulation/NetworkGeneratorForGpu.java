@@ -19,17 +19,16 @@
 
 package simbox_simulation;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.List;
 import java.util.ListIterator;
 
 import map.Layer;
-import cupcarbon.WsnSimulationWindow;
+import script.CompiledScript;
+import script.ScriptCompiler;
 import device.Device;
 import device.DeviceList;
+import device.SpatialIndex;
 
 /**
  * @author Ahcene Bounceur
@@ -53,9 +52,9 @@ public class NetworkGeneratorForGpu extends Thread {
 		Device d2 = null;
 
 		ListIterator<Device> iterator;
-		ListIterator<Device> iterator2;
 
 		List<Device> nodes = DeviceList.getNodes();
+		SpatialIndex index = DeviceList.getSpatialIndex();
 		int n = nodes.size();
 		int scriptSize = SimulationInputs.scriptSize;
 
@@ -64,57 +63,45 @@ public class NetworkGeneratorForGpu extends Thread {
 
 		iterator = nodes.listIterator();
 		int i = 0;
-		int j = 0;
-		String s = "";
+		int[] instruction = new int[2];
 
-		WsnSimulationWindow.setState("Network Generating for GPU Simulation ...");
-		
-		int iterNumber = n * (n + 1) / 2;
-		int iter = 0;
+		SimulationInputs.listener
+				.stateChanged("Network Generating for GPU Simulation ...");
 		
 		while (iterator.hasNext()) {			
 			d1 = iterator.next();
 			d1.getBattery().init(SimulationInputs.energyMax);			
 			try {
-				BufferedReader br = new BufferedReader(new FileReader(d1.getScriptFileName()));
-				for (int j2 = 0; j2 < (scriptSize * 2); j2 += 2) {
-					s = br.readLine();
-					String[] inst = s.split(" ");
-					if (inst[0].toLowerCase().equals("psend")) {
-						SimulationInputs.gpuScript[i * scriptSize * 2 + j2] = Integer.parseInt(inst[1]) * 8;
-						SimulationInputs.gpuScript[i * scriptSize * 2 + j2 + 1] = 1;
-					}
-					if (inst[0].toLowerCase().equals("delay")) {
-						SimulationInputs.gpuScript[i * scriptSize * 2 + j2] = Integer.parseInt(inst[1]) * Device.dataRate / 1000;
-						SimulationInputs.gpuScript[i * scriptSize * 2 + j2 + 1] = 0;
-					}
+				CompiledScript code = ScriptCompiler.compile(d1
+						.getScriptFileName());
+				for (int j2 = 0; j2 < scriptSize; j2++) {
+					NetworkGeneratorForCpu.instruction(code, j2, instruction);
+					SimulationInputs.gpuScript[(i * scriptSize + j2) * 2] = instruction[1];
+					SimulationInputs.gpuScript[(i * scriptSize + j2) * 2 + 1] = instruction[0];
 				}
-				br.close();
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 			
 			SimulationInputs.gpuLinks[i * n + i] = 1;
 			if (iterator.nextIndex() < n) {
-				j = i + 1;
-				iterator2 = nodes.listIterator(iterator.nextIndex());
-				while (iterator2.hasNext()) {
-					WsnSimulationWindow.setProgress((int) (1000 * (iter++) / iterNumber));
-					d2 = iterator2.next();
+				SimulationInputs.listener.progressChanged((int) (1000 * i / n));
+				// Only the close devices (spatial index) are tested
+				for (int j : index.candidates(i, index.getRadioRange())) {
+					if (j < i)
+						continue;
+					d2 = index.getDevice(j);
 					if (d1.radioDetect(d2)) {
 						SimulationInputs.gpuLinks[i * n + j] = 1;
 						SimulationInputs.gpuLinks[j * n + i] = 1;
 					}
-					j++;
 				}
 			}
 			i++;
 		}
-		WsnSimulationWindow.setProgress(0);
+		SimulationInputs.listener.progressChanged(0);
 		SimulationInputs.nbSensors = n;
 		System.out.println("End of network generating.");
-		WsnSimulationWindow.setState("End of network generating.");
+		SimulationInputs.listener.stateChanged("End of network generating.");
 	}
 }
@@ -0,0 +1,350 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import static org.jocl.CL.CL_CONTEXT_DEVICES;
+import static org.jocl.CL.CL_CONTEXT_PLATFORM;
+import static org.jocl.CL.CL_DEVICE_MAX_COMPUTE_UNITS;
+import static org.jocl.CL.CL_DEVICE_TYPE_CPU;
+import static org.jocl.CL.CL_DEVICE_TYPE_GPU;
+import static org.jocl.CL.CL_MEM_COPY_HOST_PTR;
+import static org.jocl.CL.CL_MEM_READ_ONLY;
+import static org.jocl.CL.CL_MEM_READ_WRITE;
+import static org.jocl.CL.CL_PROGRAM_BUILD_LOG;
+import static org.jocl.CL.CL_QUEUE_PROFILING_ENABLE;
+import static org.jocl.CL.CL_SUCCESS;
+import static org.jocl.CL.CL_TRUE;
+import static org.jocl.CL.clBuildProgram;
+import static org.jocl.CL.clCreateBuffer;
+import static org.jocl.CL.clCreateCommandQueue;
+import static org.jocl.CL.clCreateContextFromType;
+import static org.jocl.CL.clCreateKernel;
+import static org.jocl.CL.clCreateProgramWithSource;
+import static org.jocl.CL.clEnqueueNDRangeKernel;
+import static org.jocl.CL.clEnqueueReadBuffer;
+import static org.jocl.CL.clGetContextInfo;
+import static org.jocl.CL.clGetDeviceInfo;
+import static org.jocl.CL.clGetPlatformIDs;
+import static org.jocl.CL.clGetProgramBuildInfo;
+import static org.jocl.CL.clReleaseMemObject;
+import static org.jocl.CL.clSetKernelArg;
+
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_context_properties;
+import org.jocl.cl_device_id;
+import org.jocl.cl_kernel;
+import org.jocl.cl_mem;
+import org.jocl.cl_platform_id;
+import org.jocl.cl_program;
+
+/**
+ * @version 1.0
+ *
+ *          The kernels executed by OpenCL (JOCL) from the scripts of the
+ *          directory opencl_scripts. The vectors are copied to the device
+ *          before each kernel and read back after it.
+ */
+public class OpenCLKernel extends SimulationKernel {
+
+	private int nbCore;
+	private int[] nbSensorsBuffer = new int[1];
+	private int[] scriptSizeBuffer = new int[1];
+	private int[] minBuffer = new int[1];
+	private int[] stopBuffer = new int[1];
+
+	private cl_context context;
+	private cl_context_properties contextProperties;
+	private cl_platform_id[] platformIDs;
+	private cl_device_id[] devices;
+
+	private cl_command_queue commandQueue;
+
+	private cl_kernel kernelNextInstruction;
+	private cl_kernel kernelConsumption;
+	private cl_kernel kernelStopCondition;
+
+	private cl_program programNextInstruction;
+	private cl_program programConsumption;
+	private cl_program programStopCondition;
+
+	// ------------------------------------------------------------
+	// Returns true if an OpenCL context (GPU or CPU) can be created
+	// ------------------------------------------------------------
+	public boolean isAvailable() {
+		try {
+			return getPlatform() == 0;
+		} catch (Throwable e) {
+			// No OpenCL library (UnsatisfiedLinkError) or no platform
+			// (CLException)
+			System.out.println("OpenCL : " + e.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public void init(int nbSensors, int scriptSize, int[] script, byte[] links) {
+		super.init(nbSensors, scriptSize, script, links);
+		nbSensorsBuffer[0] = nbSensors;
+		scriptSizeBuffer[0] = scriptSize;
+		if (nbSensors > 8)
+			nbCore = nbSensors / 8;
+		else
+			nbCore = 4;
+		if (context == null)
+			getPlatform();
+		createProgramNextInstruction();
+		createProgramConsumption();
+		createProgramStopCondition();
+		createCommandeQueue();
+		createKernels();
+	}
+
+	@Override
+	public String getName() {
+		return "OpenCL";
+	}
+
+	// ------------------------------------------------------------
+	// getInt
+	// ------------------------------------------------------------
+	private int getInt(cl_device_id device, int paramName) {
+		return getInts(device, paramName, 1)[0];
+	}
+
+	// ------------------------------------------------------------
+	// getInts
+	// ------------------------------------------------------------
+	private int[] getInts(cl_device_id device, int paramName, int numValues) {
+		int values[] = new int[numValues];
+		clGetDeviceInfo(device, paramName, Sizeof.cl_int * numValues,
+				Pointer.to(values), null);
+		return values;
+	}
+
+	// ------------------------------------------------------------
+	// getPlatform
+	// ------------------------------------------------------------
+	public int getPlatform() {
+		platformIDs = new cl_platform_id[1];
+		clGetPlatformIDs(platformIDs.length, platformIDs, null);
+
+		contextProperties = new cl_context_properties();
+		contextProperties.addProperty(CL_CONTEXT_PLATFORM, platformIDs[0]);
+
+		context = clCreateContextFromType(contextProperties,
+				CL_DEVICE_TYPE_GPU, null, null, null);
+		if (context == null) {
+			// If no context for a GPU device could be created,
+			// try to create one for a CPU device.
+			context = clCreateContextFromType(contextProperties,
+					CL_DEVICE_TYPE_CPU, null, null, null);
+			if (context == null) {
+				System.out.println("Unable to create a context");
+				return -1;
+			}
+		}
+
+		long numBytes[] = new long[1];
+
+		clGetContextInfo(context, CL_CONTEXT_DEVICES, 0, null, numBytes);
+
+		int numDevices = (int) numBytes[0] / Sizeof.cl_device_id;
+		devices = new cl_device_id[numDevices];
+
+		clGetContextInfo(context, CL_CONTEXT_DEVICES, numBytes[0],
+				Pointer.to(devices), null);
+
+		int maxComputeUnits = getInt(devices[0], CL_DEVICE_MAX_COMPUTE_UNITS);
+		System.out.printf("CL_DEVICE_MAX_COMPUTE_UNITS:\t\t%d\n",
+				maxComputeUnits);
+
+		return 0;
+	}
+
+	// ------------------------------------------------------------
+	// Create command queue
+	// ------------------------------------------------------------
+	public void createCommandeQueue() {
+		commandQueue = clCreateCommandQueue(context, devices[0],
+				CL_QUEUE_PROFILING_ENABLE, null);
+	}
+
+	// ------------------------------------------------------------
+	// Create and build a program from its source
+	// ------------------------------------------------------------
+	private cl_program createProgram(String programSource) {
+		cl_program program = clCreateProgramWithSource(context, 1,
+				new String[] { programSource }, null, null);
+
+		int stat = clBuildProgram(program, 0, null, null, null, null);
+
+		if (stat != CL_SUCCESS) {
+			System.out.println("ERREUR");
+			char buildLog[] = new char[16384];
+			clGetProgramBuildInfo(program, devices[0], CL_PROGRAM_BUILD_LOG,
+					16384, Pointer.to(buildLog), null);
+		}
+		return program;
+	}
+
+	// ------------------------------------------------------------
+	// Create the program of the next instruction
+	// ------------------------------------------------------------
+	public void createProgramNextInstruction() {
+		programNextInstruction = createProgram(OpenCLScriptLoader
+				.loadNextInstructionOCLScript());
+	}
+
+	// ------------------------------------------------------------
+	// Create the programe of the consumption
+	// ------------------------------------------------------------
+	public void createProgramConsumption() {
+		programConsumption = createProgram(OpenCLScriptLoader
+				.loadConsumptionOCLScript());
+	}
+
+	// ------------------------------------------------------------
+	// Create the program of the stop condition
+	// ------------------------------------------------------------
+	public void createProgramStopCondition() {
+		programStopCondition = createProgram(OpenCLScriptLoader
+				.loadStopConditionOCLScript());
+	}
+
+	// ------------------------------------------------------------
+	// Create kernels
+	// ------------------------------------------------------------
+	public void createKernels() {
+		kernelNextInstruction = clCreateKernel(programNextInstruction,
+				"sampleKernel", null);
+		kernelConsumption = clCreateKernel(programConsumption, "sampleKernel",
+				null);
+		kernelStopCondition = clCreateKernel(programStopCondition,
+				"sampleKernel", null);
+	}
+
+	// ------------------------------------------------------------
+	// Buffer initialized with a host vector
+	// ------------------------------------------------------------
+	private cl_mem buffer(long flags, int size, Pointer p) {
+		return clCreateBuffer(context, flags | CL_MEM_COPY_HOST_PTR, size, p,
+				null);
+	}
+
+	// ------------------------------------------------------------
+	// Set the arguments, launch the kernel and wait for the end
+	// ------------------------------------------------------------
+	private void launch(cl_kernel kernel, cl_mem[] mem) {
+		for (int i = 0; i < mem.length; i++)
+			clSetKernelArg(kernel, i, Sizeof.cl_mem, Pointer.to(mem[i]));
+		long global_work_size[] = new long[] { nbSensors };
+		long local_work_size[] = new long[] { nbCore };
+		clEnqueueNDRangeKernel(commandQueue, kernel, 1, null,
+				global_work_size, local_work_size, 0, null, null);
+	}
+
+	private void read(cl_mem mem, int size, Pointer p) {
+		clEnqueueReadBuffer(commandQueue, mem, CL_TRUE, 0, size, p, 0, null,
+				null);
+	}
+
+	private void release(cl_mem[] mem) {
+		for (cl_mem m : mem)
+			clReleaseMemObject(m);
+	}
+
+	@Override
+	public void nextInstruction(int[] event, int[] scriptIndex,
+			int[] operationType, byte[] deadSensor, int[] energy) {
+		Pointer pEvent = Pointer.to(event);
+		Pointer pScriptIndex = Pointer.to(scriptIndex);
+		Pointer pOperationType = Pointer.to(operationType);
+		Pointer pDeadSensor = Pointer.to(deadSensor);
+		int n = nbSensors;
+
+		cl_mem[] mem = new cl_mem[7];
+		mem[0] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n, pEvent);
+		mem[1] = buffer(CL_MEM_READ_ONLY, Sizeof.cl_int * n * scriptSize * 2,
+				Pointer.to(script));
+		mem[2] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n, pScriptIndex);
+		mem[3] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n, pOperationType);
+		mem[4] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int,
+				Pointer.to(scriptSizeBuffer));
+		mem[5] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_char * n, pDeadSensor);
+		mem[6] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n,
+				Pointer.to(energy));
+		launch(kernelNextInstruction, mem);
+
+		read(mem[0], n * Sizeof.cl_int, pEvent);
+		read(mem[2], n * Sizeof.cl_int, pScriptIndex);
+		read(mem[3], n * Sizeof.cl_int, pOperationType);
+		read(mem[5], n * Sizeof.cl_char, pDeadSensor);
+		release(mem);
+	}
+
+	@Override
+	public void consumption(int min, int[] operationType, int[] energy,
+			byte[] deadSensor, int[] event, int[] event2) {
+		Pointer pEnergy = Pointer.to(energy);
+		Pointer pEvent = Pointer.to(event);
+		Pointer pEvent2 = Pointer.to(event2);
+		int n = nbSensors;
+		minBuffer[0] = min;
+
+		cl_mem[] mem = new cl_mem[8];
+		mem[0] = buffer(CL_MEM_READ_ONLY, Sizeof.cl_char * n * n,
+				Pointer.to(links));
+		mem[1] = buffer(CL_MEM_READ_ONLY, Sizeof.cl_int, Pointer.to(minBuffer));
+		mem[2] = buffer(CL_MEM_READ_ONLY, Sizeof.cl_int * n,
+				Pointer.to(operationType));
+		mem[3] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n, pEnergy);
+		mem[4] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_char * n,
+				Pointer.to(deadSensor));
+		mem[5] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int,
+				Pointer.to(nbSensorsBuffer));
+		mem[6] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n, pEvent);
+		mem[7] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int * n, pEvent2);
+		launch(kernelConsumption, mem);
+
+		read(mem[3], n * Sizeof.cl_int, pEnergy);
+		read(mem[6], n * Sizeof.cl_int, pEvent);
+		read(mem[7], n * Sizeof.cl_int, pEvent2);
+		release(mem);
+	}
+
+	@Override
+	public int stopCondition(byte[] deadSensor) {
+		Pointer pStop = Pointer.to(stopBuffer);
+		stopBuffer[0] = 1;
+
+		cl_mem[] mem = new cl_mem[2];
+		mem[0] = buffer(CL_MEM_READ_ONLY, Sizeof.cl_char * nbSensors,
+				Pointer.to(deadSensor));
+		mem[1] = buffer(CL_MEM_READ_WRITE, Sizeof.cl_int, pStop);
+		launch(kernelStopCondition, mem);
+
+		read(mem[1], Sizeof.cl_int, pStop);
+		release(mem);
+		return stopBuffer[0];
+	}
+}
@@ -0,0 +1,255 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @version 1.0
+ *
+ *          Multi-core version of CpuSimulation. The sensors are split in
+ *          ranges (chunks) and the per-sensor phases of an iteration (as the
+ *          OpenCL kernels nextinstruction.cl and consumption.cl) are executed
+ *          by a pool of threads : the sending vector, the min of the events
+ *          (parallel reduction), the consumption with the event decrement and
+ *          the advance of the scripts. The loop of the iterations (mobility,
+ *          fast-forward) is the one of CpuSimulation.simulateSteps, so the
+ *          results are the same as the ones of CpuSimulation. Without
+ *          mobility and fast-forward, an iteration only visits the sensors
+ *          of the event (CpuSimulation.simulateEvents), which is faster than
+ *          the phases on all the sensors, so this simulation is used.
+ */
+public class ParallelCpuSimulation extends CpuSimulation {
+
+	// Under this number of sensors, the sequential CpuSimulation is faster
+	public static final int MIN_SENSORS = 1000;
+
+	// Number of chunks by thread (load balancing)
+	private static final int CHUNKS_BY_THREAD = 4;
+
+	private int nbThreads;
+	private ExecutorService pool;
+	private List<Callable<Integer>> sendingPhase;
+	private List<Callable<Integer>> minPhase;
+	private List<Callable<Integer>> min2Phase;
+	private List<Callable<Integer>> consumptionPhase;
+	private List<Callable<Integer>> scriptPhase;
+	private int min = 0;
+
+	public ParallelCpuSimulation() {
+		this(SimulationInputs.nbThreads);
+	}
+
+	public ParallelCpuSimulation(int nbThreads) {
+		super();
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	public ParallelCpuSimulation(SimulationContext context, int nbThreads) {
+		super(context);
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	/**
+	 * @return if the parallel simulation should be used instead of the
+	 *         sequential one (several threads and a large network)
+	 */
+	public static boolean isWorthIt() {
+		return (SimulationInputs.nbThreads > 1)
+				&& (SimulationInputs.nbSensors >= MIN_SENSORS);
+	}
+
+	// ------------------------------------------------------------
+	// A phase of an iteration applied on the sensors [from, to[
+	// ------------------------------------------------------------
+	abstract class Chunk implements Callable<Integer> {
+		protected int from;
+		protected int to;
+
+		public Chunk(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	// Value of each sensor if it sends, 0 otherwise
+	class SendingChunk extends Chunk {
+		public SendingChunk(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		public Integer call() {
+			for (int j = from; j < to; j++)
+				sending[j] = script[j][iscript[j]][0] * (1 - deadSensor[j]);
+			return 0;
+		}
+	}
+
+	// Min of the events (event or event2) of the chunk
+	class MinChunk extends Chunk {
+		private int[] events;
+
+		public MinChunk(int from, int to, int[] events) {
+			super(from, to);
+			this.events = events;
+		}
+
+		@Override
+		public Integer call() {
+			int m = (int) 10e8;
+			for (int i = from; i < to; i++)
+				if (m > events[i])
+					m = events[i];
+			return m;
+		}
+	}
+
+	// Consumption and decrement of the events
+	class ConsumptionChunk extends Chunk {
+		public ConsumptionChunk(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		public Integer call() {
+			int conso;
+			for (int i = from; i < to; i++) {
+				conso = links.consumption(i, sending);
+				energy[i] -= min * conso * eRTx;
+				if (energy[i] < 0)
+					energy[i] = 0;
+				event[i] -= min;
+				if (mobility)
+					event2[i] -= min;
+			}
+			return 0;
+		}
+	}
+
+	// Next instructions of the scripts, returns the number of sensors alive
+	class ScriptChunk extends Chunk {
+		public ScriptChunk(int from, int to) {
+			super(from, to);
+		}
+
+		@Override
+		public Integer call() {
+			int alive = 0;
+			for (int i = from; i < to; i++) {
+				if (event[i] == 0) {
+					iscript[i]++;
+					iscript[i] = (byte) (iscript[i] % scriptSize);
+					event[i] = script[i][iscript[i]][1];
+				}
+				if (energy[i] <= 0) {
+					event[i] = 99999999;
+					deadSensor[i] = 1;
+				} else
+					alive++;
+			}
+			return alive;
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Creation of the chunks of each phase
+	// ------------------------------------------------------------
+	private void createPhases() {
+		sendingPhase = new ArrayList<Callable<Integer>>();
+		minPhase = new ArrayList<Callable<Integer>>();
+		min2Phase = new ArrayList<Callable<Integer>>();
+		consumptionPhase = new ArrayList<Callable<Integer>>();
+		scriptPhase = new ArrayList<Callable<Integer>>();
+		int nbChunks = Math.min(nbSensors, nbThreads * CHUNKS_BY_THREAD);
+		for (int c = 0; c < nbChunks; c++) {
+			int from = (int) ((long) nbSensors * c / nbChunks);
+			int to = (int) ((long) nbSensors * (c + 1) / nbChunks);
+			sendingPhase.add(new SendingChunk(from, to));
+			minPhase.add(new MinChunk(from, to, event));
+			min2Phase.add(new MinChunk(from, to, event2));
+			consumptionPhase.add(new ConsumptionChunk(from, to));
+			scriptPhase.add(new ScriptChunk(from, to));
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Execute a phase and combine the results of the chunks (min or
+	// sum)
+	// ------------------------------------------------------------
+	private int execute(List<Callable<Integer>> phase, boolean isMin) {
+		int result = isMin ? (int) 10e8 : 0;
+		try {
+			for (Future<Integer> f : pool.invokeAll(phase)) {
+				int v = f.get();
+				if (isMin)
+					result = Math.min(result, v);
+				else
+					result += v;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return result;
+	}
+
+	@Override
+	protected void startPhases() {
+		pool = Executors.newFixedThreadPool(nbThreads);
+		createPhases();
+		System.out.println("Parallel simulation : " + nbThreads + " threads");
+	}
+
+	@Override
+	protected void endPhases() {
+		pool.shutdown();
+	}
+
+	@Override
+	protected int nextEvent() {
+		return execute(minPhase, true);
+	}
+
+	@Override
+	protected int nextMove() {
+		return execute(min2Phase, true);
+	}
+
+	@Override
+	protected void consume(int min) {
+		this.min = min;
+		execute(sendingPhase, false);
+		links.setSending(sending);
+		execute(consumptionPhase, false);
+	}
+
+	@Override
+	protected int advance() {
+		return execute(scriptPhase, false);
+	}
+}
@@ -0,0 +1,151 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import project.Project;
+
+/**
+ * @version 1.0
+ *
+ *          Destination of the results of the CPU simulations : one frame by
+ *          iteration with the time, the energy of each sensor and optionally
+ *          the events. The bytes are written in a buffer which is sent to the
+ *          file when it is full (no String is created by value).
+ */
+public abstract class ResultSink {
+
+	protected static final int BUFFER_SIZE = 1 << 16;
+
+	private OutputStream out;
+	protected byte[] buffer;
+	protected int position = 0;
+
+	/**
+	 * @param name
+	 *            Name of the file in the results directory (without extension)
+	 * @return the sink chosen in SimulationInputs (format and sampling)
+	 * @throws IOException
+	 */
+	public static ResultSink newInstance(String name) throws IOException {
+		return newInstance(Project.getProjectResultsPath() + "/" + name,
+				SimulationInputs.resultSinkType, SimulationInputs.resultSampling);
+	}
+
+	/**
+	 * @param path
+	 *            Name of the file (without extension)
+	 * @param type
+	 *            Format of the file
+	 * @param sampling
+	 *            One frame is kept every sampling frames
+	 * @return the sink
+	 * @throws IOException
+	 */
+	public static ResultSink newInstance(String path, ResultSinkType type,
+			int sampling) throws IOException {
+		ResultSink sink;
+		if (type == ResultSinkType.BINARY)
+			sink = new BinaryResultSink(path + ".bin");
+		else
+			sink = new CsvResultSink(path + ".csv");
+		if (sampling > 1)
+			sink = new SampledResultSink(sink, sampling);
+		return sink;
+	}
+
+	/**
+	 * @return a sink that does not write anything (only the final state of
+	 *         the simulation is used)
+	 */
+	public static ResultSink discard() {
+		return new ResultSink() {
+			@Override
+			public void write(long time, int[] energy, int[] event) {
+			}
+		};
+	}
+
+	protected ResultSink() {
+	}
+
+	protected ResultSink(String fileName) throws IOException {
+		out = new FileOutputStream(fileName);
+		buffer = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Write the frame of an iteration
+	 *
+	 * @param time
+	 * @param energy
+	 *            Energy of each sensor
+	 * @param event
+	 *            Events of each sensor (null if they are not saved)
+	 * @throws IOException
+	 */
+	public abstract void write(long time, int[] energy, int[] event)
+			throws IOException;
+
+	/**
+	 * Close at the end of the simulation with its final state (the frame of
+	 * the next iteration). It is only written by the sinks that drop frames
+	 * (SampledResultSink).
+	 *
+	 * @param time
+	 * @param energy
+	 * @param event
+	 *            (null if they are not saved)
+	 * @throws IOException
+	 */
+	public void close(long time, int[] energy, int[] event)
+			throws IOException {
+		close();
+	}
+
+	/**
+	 * Write the last bytes and close the file (can be called several times)
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (out != null) {
+			flush();
+			out.close();
+			out = null;
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Make sure that n bytes can be added to the buffer
+	// ------------------------------------------------------------
+	protected void ensure(int n) throws IOException {
+		if (position + n > buffer.length)
+			flush();
+	}
+
+	protected void flush() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+}
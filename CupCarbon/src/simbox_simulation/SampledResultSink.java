@@ -0,0 +1,77 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.io.IOException;
+
+/**
+ * @version 1.0
+ *
+ *          Keeps one frame every k iterations (decimation) and sends it to
+ *          another sink. The dropped frames are not read. When the last frame
+ *          has been dropped, the final state given by the simulation to
+ *          close(time, energy, event) is written instead, so the end of the
+ *          simulation is in the results.
+ */
+public class SampledResultSink extends ResultSink {
+
+	private ResultSink sink;
+	private int k;
+	private long count = 0;
+
+	// The last frame has not been written
+	private boolean pending = false;
+
+	/**
+	 * @param sink
+	 *            The sink of the kept frames
+	 * @param k
+	 *            One frame is kept every k frames
+	 */
+	public SampledResultSink(ResultSink sink, int k) {
+		this.sink = sink;
+		this.k = Math.max(1, k);
+	}
+
+	@Override
+	public void write(long time, int[] energy, int[] event) throws IOException {
+		if (count++ % k == 0) {
+			sink.write(time, energy, event);
+			pending = false;
+			return;
+		}
+		pending = true;
+	}
+
+	@Override
+	public void close(long time, int[] energy, int[] event)
+			throws IOException {
+		if (pending) {
+			sink.write(time, energy, event);
+			pending = false;
+		}
+		sink.close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		sink.close();
+	}
+}
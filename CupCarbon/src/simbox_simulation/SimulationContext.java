@@ -0,0 +1,259 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import project.Project;
+import device.Device;
+import device.DeviceList;
+
+/**
+ * @version 1.0
+ *
+ *          The inputs of one CPU simulation (what SimulationInputs and
+ *          DeviceList provide) in an object that does not change : several
+ *          simulations can run at the same time, each one with its context.
+ *          The methods with... return a copy with one different parameter;
+ *          the copies share the devices, the scripts and the links, which are
+ *          only read by the simulations.
+ */
+public class SimulationContext implements Cloneable {
+
+	private boolean discreteEvent;
+	private boolean mobility;
+	private int step;
+	private int energyMax;
+	private int iterNumber;
+	private int nbSensors;
+	private int scriptSize;
+	private int[][][] script;
+	private LinkMatrix links;
+	private List<Device> devices;
+	private boolean visual;
+	private int visualDelay;
+	private boolean fastForward;
+	private boolean depletionEvents;
+
+	// Results (resultsPath == null : the results are not saved)
+	private String resultsPath;
+	private String resultName = "cpu_simulation";
+	private ResultSinkType resultSinkType;
+	private int resultSampling;
+
+	private SimulationListener listener;
+
+	private SimulationContext() {
+	}
+
+	/**
+	 * @return the context of the current values of SimulationInputs and of
+	 *         the devices of DeviceList (the network must be generated)
+	 */
+	public static SimulationContext fromInputs() {
+		SimulationContext context = new SimulationContext();
+		context.discreteEvent = SimulationInputs.discreteEvent;
+		context.mobility = SimulationInputs.mobility;
+		context.step = SimulationInputs.step;
+		context.energyMax = SimulationInputs.energyMax;
+		context.iterNumber = SimulationInputs.iterNumber;
+		context.nbSensors = SimulationInputs.nbSensors;
+		context.scriptSize = SimulationInputs.scriptSize;
+		context.script = SimulationInputs.script;
+		context.links = SimulationInputs.linkMatrix;
+		context.devices = Collections.unmodifiableList(new ArrayList<Device>(
+				DeviceList.getNodes()));
+		context.visual = SimulationInputs.visual;
+		context.visualDelay = SimulationInputs.visualDelay;
+		context.fastForward = SimulationInputs.fastForward;
+		context.depletionEvents = SimulationInputs.depletionEvents;
+		context.resultsPath = Project.getProjectResultsPath();
+		context.resultSinkType = SimulationInputs.resultSinkType;
+		context.resultSampling = SimulationInputs.resultSampling;
+		context.listener = SimulationInputs.listener;
+		return context;
+	}
+
+	private SimulationContext copy() {
+		try {
+			return (SimulationContext) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public SimulationContext withEnergyMax(int energyMax) {
+		SimulationContext context = copy();
+		context.energyMax = energyMax;
+		return context;
+	}
+
+	public SimulationContext withStep(int step) {
+		SimulationContext context = copy();
+		context.step = step;
+		return context;
+	}
+
+	public SimulationContext withIterNumber(int iterNumber) {
+		SimulationContext context = copy();
+		context.iterNumber = iterNumber;
+		return context;
+	}
+
+	public SimulationContext withFastForward(boolean fastForward) {
+		SimulationContext context = copy();
+		context.fastForward = fastForward;
+		return context;
+	}
+
+	public SimulationContext withDepletionEvents(boolean depletionEvents) {
+		SimulationContext context = copy();
+		context.depletionEvents = depletionEvents;
+		return context;
+	}
+
+	public SimulationContext withDiscreteEvent(boolean discreteEvent) {
+		SimulationContext context = copy();
+		context.discreteEvent = discreteEvent;
+		return context;
+	}
+
+	/**
+	 * @param resultsPath
+	 *            Directory of the result files (null : no result file)
+	 * @return the copy
+	 */
+	public SimulationContext withResultsPath(String resultsPath) {
+		SimulationContext context = copy();
+		context.resultsPath = resultsPath;
+		return context;
+	}
+
+	/**
+	 * @param resultName
+	 *            Name of the result file (without extension)
+	 * @return the copy
+	 */
+	public SimulationContext withResultName(String resultName) {
+		SimulationContext context = copy();
+		context.resultName = resultName;
+		return context;
+	}
+
+	public SimulationContext withListener(SimulationListener listener) {
+		SimulationContext context = copy();
+		context.listener = listener;
+		return context;
+	}
+
+	/**
+	 * @param suffix
+	 *            Added to the name of the file
+	 * @return the sink of the results of a simulation
+	 * @throws IOException
+	 */
+	public ResultSink newResultSink(String suffix) throws IOException {
+		if (resultsPath == null)
+			return ResultSink.discard();
+		return ResultSink.newInstance(resultsPath + "/" + resultName + suffix,
+				resultSinkType, resultSampling);
+	}
+
+	/**
+	 * @return the links for one simulation (see LinkMatrix.share)
+	 */
+	public LinkMatrix shareLinks() {
+		return links.share();
+	}
+
+	public boolean isDiscreteEvent() {
+		return discreteEvent;
+	}
+
+	public boolean isMobility() {
+		return mobility;
+	}
+
+	public int getStep() {
+		return step;
+	}
+
+	public int getEnergyMax() {
+		return energyMax;
+	}
+
+	public int getIterNumber() {
+		return iterNumber;
+	}
+
+	public int getNbSensors() {
+		return nbSensors;
+	}
+
+	public int getScriptSize() {
+		return scriptSize;
+	}
+
+	/**
+	 * @return the scripts (shared, they must not be changed)
+	 */
+	public int[][][] getScript() {
+		return script;
+	}
+
+	public LinkMatrix getLinks() {
+		return links;
+	}
+
+	public List<Device> getDevices() {
+		return devices;
+	}
+
+	public boolean isVisual() {
+		return visual;
+	}
+
+	public int getVisualDelay() {
+		return visualDelay;
+	}
+
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
+	public boolean isDepletionEvents() {
+		return depletionEvents;
+	}
+
+	public String getResultsPath() {
+		return resultsPath;
+	}
+
+	public String getResultName() {
+		return resultName;
+	}
+
+	public SimulationListener getListener() {
+		return listener;
+	}
+}
@@ -19,6 +19,8 @@
 
 package simbox_simulation;
 
+import cupcarbon.WsnSimulationWindow;
+
 /**
  * @author Ahcene Bounceur
  * @author Arezki Laga
@@ -30,21 +32,36 @@ public class SimulationInputs {
 
 	public static boolean discreteEvent = true;
 	public static boolean mobility = false;
+	// The cycles of the scripts are jumped (CpuSimulation, see FastForward)
+	public static boolean fastForward = false;
+	// The deaths of the sensors are events (DepletionCpuSimulation)
+	public static boolean depletionEvents = false;
 	public static int step = 1 ;
 	public static int energyMax = 0;
 	public static int iterNumber = 0;
 	public static int nbSensors = 0;
+	public static int nbThreads = Runtime.getRuntime().availableProcessors();
 
 	public static int scriptSize = 0;
 	public static int[][][] script;
 	public static byte[][] links;
+	public static LinkMatrix linkMatrix;
+	public static LinkMatrixType linkMatrixType = LinkMatrixType.SPARSE;
 	
 	public static int[] gpuScript;
 	public static byte[] gpuLinks;
 		
 	public static byte eRTx = 1;	
+
+	// Format of the results and one iteration saved every resultSampling
+	public static ResultSinkType resultSinkType = ResultSinkType.CSV;
+	public static int resultSampling = 1;
 	
 	public static boolean visual ;
 	public static int visualDelay;
+
+	// State and progress of the simulations (the window or the headless
+	// runner)
+	public static SimulationListener listener = WsnSimulationWindow.LISTENER;
 	
 }
@@ -0,0 +1,100 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+/**
+ * @version 1.0
+ * 
+ *          The three kernels of the GPU simulation (next instruction,
+ *          consumption and stop condition) on the data layout of the GPU
+ *          engine : flat vectors (gpuScript, gpuLinks) and one int (or byte)
+ *          per sensor. The vectors given to the kernels are read and updated
+ *          in place.
+ */
+public abstract class SimulationKernel {
+
+	protected int nbSensors;
+	protected int scriptSize;
+	protected int[] script;
+	protected byte[] links;
+
+	/**
+	 * @return the OpenCL kernels if an OpenCL device exists, the Java kernels
+	 *         otherwise
+	 */
+	public static SimulationKernel newInstance() {
+		OpenCLKernel openCLKernel = new OpenCLKernel();
+		if (openCLKernel.isAvailable())
+			return openCLKernel;
+		System.out.println("No OpenCL device : the Java kernels are used.");
+		return new JavaKernel();
+	}
+
+	/**
+	 * @param nbSensors
+	 *            Number of sensors
+	 * @param scriptSize
+	 *            Number of instructions of each script
+	 * @param script
+	 *            Scripts (nbSensors * scriptSize * 2 : value, operation type)
+	 * @param links
+	 *            Links (nbSensors * nbSensors)
+	 */
+	public void init(int nbSensors, int scriptSize, int[] script, byte[] links) {
+		this.nbSensors = nbSensors;
+		this.scriptSize = scriptSize;
+		this.script = script;
+		this.links = links;
+	}
+
+	/**
+	 * Kernel nextinstruction.cl : the sensors whose event is finished read
+	 * their next instruction, the sensors without energy are dead
+	 */
+	public abstract void nextInstruction(int[] event, int[] scriptIndex,
+			int[] operationType, byte[] deadSensor, int[] energy);
+
+	/**
+	 * Kernel consumption.cl : consumption of each sensor during min (sum of
+	 * the operation types of the alive linked sensors) and decrement of the
+	 * events
+	 */
+	public abstract void consumption(int min, int[] operationType,
+			int[] energy, byte[] deadSensor, int[] event, int[] event2);
+
+	/**
+	 * Kernel stopcondition.cl
+	 * 
+	 * @return 0 if a sensor is dead, 1 otherwise
+	 */
+	public abstract int stopCondition(byte[] deadSensor);
+
+	/**
+	 * Release the resources of the kernels
+	 */
+	public void release() {
+	}
+
+	/**
+	 * @return the name of the kernels
+	 */
+	public abstract String getName();
+
+}
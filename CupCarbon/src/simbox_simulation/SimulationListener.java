@@ -2,7 +2,7 @@
  * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
  * www.cupcarbon.com
  * ----------------------------------------------------------------------------------------------------------------
- * Copyright (C) 2014 Ahcene Bounceur
+ * Copyright (C) 2013 Ahcene Bounceur
  * ----------------------------------------------------------------------------------------------------------------
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,32 +17,33 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *----------------------------------------------------------------------------------------------------------------*/
 
-package wisen_simulation;
+package simbox_simulation;
 
 /**
- * @author Ahcene Bounceur
- * @author Kamal Mehdi
  * @version 1.0
+ *
+ *          Receives the state and the progress of a simulation. The windows
+ *          display them (WsnSimulationWindow.LISTENER,
+ *          MtSimulationWindow.LISTENER) and the headless runner prints them.
  */
-public class WisenPing extends Thread {
-	
-	private WisenSemaphore wisenSemaphorePing = null;
-	private WisenSemaphore wisenSemaphorePong = null;
-	private WisenSimulation wisenSimulation = null;
+public interface SimulationListener {
 
-	public WisenPing(WisenSemaphore wisenSemaphorePing,
-			WisenSemaphore wisenSemaphorePong, WisenSimulation wisenSimulation) {
-		this.wisenSemaphorePing = wisenSemaphorePing;
-		this.wisenSemaphorePong = wisenSemaphorePong;
-		this.wisenSimulation = wisenSimulation;
-	}
+	/**
+	 * @param state
+	 *            Description of the current step of the simulation
+	 */
+	public void stateChanged(String state);
+
+	/**
+	 * @param progress
+	 *            From 0 to 1000
+	 */
+	public void progressChanged(int progress);
+
+	/**
+	 * @param message
+	 *            A message for the user (end of the simulation, warning)
+	 */
+	public void message(String message);
 
-	@Override
-	public void run() {
-		while (true) {			
-			wisenSemaphorePing.P();
-			wisenSimulation.eventGenerator();			
-			wisenSemaphorePong.V();
-		}
-	}
 }
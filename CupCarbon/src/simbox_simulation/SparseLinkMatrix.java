@@ -0,0 +1,216 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.Arrays;
+
+/**
+ * @version 1.0
+ * 
+ *          Links stored in the compressed sparse row (CSR) format : the
+ *          neighbours of the sensor i are columns[rowStart[i]] to
+ *          columns[rowStart[i+1]-1] (sorted). The memory is in O(n + number
+ *          of links) and the consumption of a sensor only visits its real
+ *          neighbours.
+ * 
+ *          The links added or removed are kept in a list of operations which
+ *          is merged with the CSR arrays the first time the matrix is read
+ *          after a change.
+ */
+public class SparseLinkMatrix implements LinkMatrix {
+
+	private int n;
+	private int[] rowStart;
+	private int[] columns = new int[0];
+
+	// Operations since the last compression (column j for a link, -j-1
+	// for a removed link)
+	private int[] pairRows = new int[16];
+	private int[] pairColumns = new int[16];
+	private int nbPairs = 0;
+	private volatile boolean compressed = false;
+
+	public SparseLinkMatrix(int n) {
+		this.n = n;
+		rowStart = new int[n + 1];
+		compressed = true;
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public boolean isLinked(int i, int j) {
+		compress();
+		return Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], j) >= 0;
+	}
+
+	@Override
+	public void link(int i, int j) {
+		addPair(i, j);
+	}
+
+	@Override
+	public void unlink(int i, int j) {
+		addPair(i, -j - 1);
+	}
+
+	@Override
+	public void clear() {
+		rowStart = new int[n + 1];
+		columns = new int[0];
+		nbPairs = 0;
+		compressed = true;
+	}
+
+	@Override
+	public int[] neighbours(int i) {
+		compress();
+		return Arrays.copyOfRange(columns, rowStart[i], rowStart[i + 1]);
+	}
+
+	@Override
+	public void setSending(int[] sending) {
+	}
+
+	@Override
+	public int consumption(int i, int[] sending) {
+		compress();
+		int conso = 0;
+		for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+			conso += sending[columns[k]];
+		return conso;
+	}
+
+	@Override
+	public LinkMatrix share() {
+		// Read only from now on
+		compress();
+		return this;
+	}
+
+	@Override
+	public LinkMatrix copy() {
+		compress();
+		SparseLinkMatrix copy = new SparseLinkMatrix(n);
+		copy.rowStart = rowStart.clone();
+		copy.columns = columns.clone();
+		return copy;
+	}
+
+	/**
+	 * @param i
+	 * @return the number of links of the sensor i
+	 */
+	public int degree(int i) {
+		compress();
+		return rowStart[i + 1] - rowStart[i];
+	}
+
+	/**
+	 * @return the number of links
+	 */
+	public int getNumberOfLinks() {
+		compress();
+		return rowStart[n];
+	}
+
+	private void addPair(int i, int j) {
+		if (nbPairs == pairRows.length) {
+			pairRows = Arrays.copyOf(pairRows, 2 * nbPairs);
+			pairColumns = Arrays.copyOf(pairColumns, 2 * nbPairs);
+		}
+		pairRows[nbPairs] = i;
+		pairColumns[nbPairs] = j;
+		nbPairs++;
+		compressed = false;
+	}
+
+	// ------------------------------------------------------------
+	// The matrix can be read by several threads (ParallelCpuSimulation)
+	// ------------------------------------------------------------
+	private void compress() {
+		if (!compressed)
+			compressPairs();
+	}
+
+	// ------------------------------------------------------------
+	// Merge the operations with the CSR arrays : counting sort of the
+	// operations on the rows (their order is kept), then in each row
+	// the last operation of a column decides if it is linked
+	// ------------------------------------------------------------
+	private synchronized void compressPairs() {
+		if (compressed)
+			return;
+		int[] opStart = new int[n + 1];
+		for (int k = 0; k < nbPairs; k++)
+			opStart[pairRows[k] + 1]++;
+		for (int i = 0; i < n; i++)
+			opStart[i + 1] += opStart[i];
+		int[] pos = Arrays.copyOf(opStart, n);
+		// Column in the high bits, order of the operation in the low bits
+		long[] ops = new long[nbPairs];
+		for (int k = 0; k < nbPairs; k++) {
+			int c = pairColumns[k];
+			long column = (c < 0) ? -c - 1 : c;
+			ops[pos[pairRows[k]]++] = (column << 32) | ((long) k << 1)
+					| ((c < 0) ? 0 : 1);
+		}
+
+		int[] start = new int[n + 1];
+		int[] cols = new int[rowStart[n] + nbPairs];
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			start[i] = m;
+			int from = opStart[i];
+			int to = opStart[i + 1];
+			Arrays.sort(ops, from, to);
+			int a = rowStart[i];
+			int aEnd = rowStart[i + 1];
+			int b = from;
+			while (a < aEnd || b < to) {
+				int column = (b < to) ? (int) (ops[b] >>> 32) : Integer.MAX_VALUE;
+				if (a < aEnd && columns[a] < column) {
+					cols[m++] = columns[a++];
+					continue;
+				}
+				// Last operation on this column
+				while (b + 1 < to && (int) (ops[b + 1] >>> 32) == column)
+					b++;
+				if ((ops[b] & 1) == 1)
+					cols[m++] = column;
+				if (a < aEnd && columns[a] == column)
+					a++;
+				b++;
+			}
+		}
+		start[n] = m;
+		rowStart = start;
+		columns = (m == cols.length) ? cols : Arrays.copyOf(cols, m);
+		nbPairs = 0;
+		if (pairRows.length > 1024) {
+			pairRows = new int[16];
+			pairColumns = new int[16];
+		}
+		compressed = true;
+	}
+}
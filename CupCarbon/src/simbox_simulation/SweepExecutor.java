@@ -0,0 +1,223 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package simbox_simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version 1.0
+ *
+ *          Runs many CPU simulations (parameter sweep) on a pool of threads,
+ *          one CpuSimulation by context. The contexts created from the same
+ *          context (with...) share the scripts and the links, so the network
+ *          is generated once for all the runs. Each run only allocates its
+ *          state (energies, events, ...).
+ *
+ *          The simulations with mobility move the devices, they cannot run at
+ *          the same time and are refused.
+ */
+public class SweepExecutor {
+
+	// The runs do not report their state
+	private static final SimulationListener QUIET = new SimulationListener() {
+		@Override
+		public void stateChanged(String state) {
+		}
+
+		@Override
+		public void progressChanged(int progress) {
+		}
+
+		@Override
+		public void message(String message) {
+		}
+	};
+
+	private int nbThreads;
+	private SimulationListener listener = SimulationInputs.listener;
+
+	public SweepExecutor() {
+		this(SimulationInputs.nbThreads);
+	}
+
+	/**
+	 * @param nbThreads
+	 *            Number of simulations running at the same time
+	 */
+	public SweepExecutor(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	/**
+	 * @param listener
+	 *            Receives the progress of the sweep (number of runs done)
+	 */
+	public void setListener(SimulationListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * The contexts of all the combinations of energies and steps
+	 *
+	 * @param context
+	 * @param energies
+	 * @param steps
+	 * @return the contexts
+	 */
+	public static List<SimulationContext> variants(SimulationContext context,
+			int[] energies, int[] steps) {
+		List<SimulationContext> contexts = new ArrayList<SimulationContext>();
+		for (int energy : energies)
+			for (int step : steps)
+				contexts.add(context.withEnergyMax(energy).withStep(step));
+		return contexts;
+	}
+
+	// ------------------------------------------------------------
+	// Result of one simulation
+	// ------------------------------------------------------------
+	public static class Run {
+		private SimulationContext context;
+		private int[] energy;
+		private long iterations;
+		private long duration;
+		private Exception error;
+
+		public SimulationContext getContext() {
+			return context;
+		}
+
+		/**
+		 * @return the energy of each sensor at the end
+		 */
+		public int[] getEnergy() {
+			return energy;
+		}
+
+		/**
+		 * @return the number of sensors with energy at the end
+		 */
+		public int getNbAlive() {
+			int alive = 0;
+			if (energy != null)
+				for (int e : energy)
+					if (e > 0)
+						alive++;
+			return alive;
+		}
+
+		public long getIterations() {
+			return iterations;
+		}
+
+		/**
+		 * @return the duration of the simulation (ms)
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		/**
+		 * @return the exception of the simulation (null if it succeeded)
+		 */
+		public Exception getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Run the simulations and wait for the end of all of them
+	 *
+	 * @param contexts
+	 * @return the results (in the order of the contexts)
+	 * @throws InterruptedException
+	 */
+	public List<Run> run(List<SimulationContext> contexts)
+			throws InterruptedException {
+		final int total = contexts.size();
+		final AtomicInteger done = new AtomicInteger();
+		List<Callable<Run>> tasks = new ArrayList<Callable<Run>>();
+		int k = 0;
+		for (SimulationContext context : contexts) {
+			if (context.isMobility())
+				throw new IllegalArgumentException(
+						"A sweep cannot run simulations with mobility");
+			// The shared links are prepared before the runs
+			context.getLinks().share();
+			final SimulationContext runContext = context.withListener(QUIET)
+					.withResultName(context.getResultName() + "_" + (k++));
+			tasks.add(new Callable<Run>() {
+				@Override
+				public Run call() {
+					Run run = simulate(runContext);
+					listener.progressChanged(1000 * done.incrementAndGet()
+							/ total);
+					return run;
+				}
+			});
+		}
+
+		listener.stateChanged("Sweep : " + total + " simulations ...");
+		ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+		List<Run> runs = new ArrayList<Run>();
+		try {
+			for (Future<Run> f : pool.invokeAll(tasks))
+				runs.add(f.get());
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		listener.stateChanged("End of the sweep (" + total + " simulations).");
+		listener.progressChanged(0);
+		return runs;
+	}
+
+	// ------------------------------------------------------------
+	// One simulation in the current thread
+	// ------------------------------------------------------------
+	private static Run simulate(SimulationContext context) {
+		Run run = new Run();
+		run.context = context;
+		long start = System.currentTimeMillis();
+		try {
+			CpuSimulation simulation;
+			if (context.isDepletionEvents())
+				simulation = new DepletionCpuSimulation(context);
+			else
+				simulation = new CpuSimulation(context);
+			simulation.setUpdateDevices(false);
+			simulation.simulate();
+			run.energy = simulation.getEnergy();
+			run.iterations = simulation.getIterations();
+		} catch (Exception e) {
+			run.error = e;
+		}
+		run.duration = System.currentTimeMillis() - start;
+		return run;
+	}
+}
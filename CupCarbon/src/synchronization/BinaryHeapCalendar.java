@@ -0,0 +1,149 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package synchronization;
+
+import wisen_simulation2.Event;
+
+/**
+ * @version 1.0
+ *
+ *          Event calendar based on an indexed binary heap. Insertion, removal
+ *          and rescheduling are in O(log n), the first event is read in O(1).
+ *          Each event keeps its position in the heap (calendarIndex).
+ */
+public class BinaryHeapCalendar implements EventCalendar {
+
+	private Event[] heap;
+	private int size = 0;
+	private long sequence = 0;
+	private SchedulerComparator comparator = new SchedulerComparator();
+
+	public BinaryHeapCalendar() {
+		this(64);
+	}
+
+	public BinaryHeapCalendar(int capacity) {
+		heap = new Event[Math.max(capacity, 2)];
+	}
+
+	@Override
+	public void add(Event event) {
+		if (size == heap.length) {
+			Event[] tmp = new Event[heap.length * 2];
+			System.arraycopy(heap, 0, tmp, 0, size);
+			heap = tmp;
+		}
+		event.setCalendarSequence(sequence++);
+		heap[size] = event;
+		event.setCalendarIndex(size);
+		size++;
+		siftUp(size - 1);
+	}
+
+	@Override
+	public void remove(Event event) {
+		int i = event.getCalendarIndex();
+		if (i < 0 || i >= size || heap[i] != event)
+			return;
+		size--;
+		event.setCalendarIndex(-1);
+		if (i == size) {
+			heap[size] = null;
+			return;
+		}
+		heap[i] = heap[size];
+		heap[i].setCalendarIndex(i);
+		heap[size] = null;
+		if (!siftUp(i))
+			siftDown(i);
+	}
+
+	@Override
+	public void reschedule(Event event) {
+		int i = event.getCalendarIndex();
+		if (i < 0 || i >= size || heap[i] != event) {
+			add(event);
+			return;
+		}
+		event.setCalendarSequence(sequence++);
+		if (!siftUp(i))
+			siftDown(i);
+	}
+
+	@Override
+	public Event peek() {
+		if (size == 0)
+			return null;
+		return heap[0];
+	}
+
+	@Override
+	public Event poll() {
+		Event first = peek();
+		if (first != null)
+			remove(first);
+		return first;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// ------------------------------------------------------------
+	// Move up the element i, returns true if it has moved
+	// ------------------------------------------------------------
+	private boolean siftUp(int i) {
+		Event e = heap[i];
+		int start = i;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (comparator.compare(e, heap[parent]) >= 0)
+				break;
+			heap[i] = heap[parent];
+			heap[i].setCalendarIndex(i);
+			i = parent;
+		}
+		heap[i] = e;
+		e.setCalendarIndex(i);
+		return i != start;
+	}
+
+	// ------------------------------------------------------------
+	// Move down the element i
+	// ------------------------------------------------------------
+	private void siftDown(int i) {
+		Event e = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && comparator.compare(heap[right], heap[child]) < 0)
+				child = right;
+			if (comparator.compare(e, heap[child]) <= 0)
+				break;
+			heap[i] = heap[child];
+			heap[i].setCalendarIndex(i);
+			i = child;
+		}
+		heap[i] = e;
+		e.setCalendarIndex(i);
+	}
+}
@@ -0,0 +1,214 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package synchronization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import wisen_simulation2.Event;
+
+/**
+ * @version 1.0
+ *
+ *          Event calendar based on the calendar queue of R. Brown (1988). The
+ *          events are spread in buckets of fixed width (one "day") that are
+ *          visited circularly (one "year"). The number of buckets and their
+ *          width are adapted when the number of events doubles or halves, so
+ *          insertion and extraction of the first event are in amortized O(1)
+ *          when the spacing of the events is regular. Each event keeps the
+ *          number of its bucket (calendarIndex).
+ */
+public class CalendarQueue implements EventCalendar {
+
+	private static final int MIN_BUCKETS = 2;
+	private static final int SAMPLE_SIZE = 25;
+
+	private ArrayList<Event>[] buckets;
+	private int nbBuckets;
+	private long width = 1;
+	private int size = 0;
+	private long sequence = 0;
+	private int lastBucket = 0;
+	private long bucketTop = 1;
+	private SchedulerComparator comparator = new SchedulerComparator();
+
+	public CalendarQueue() {
+		createBuckets(MIN_BUCKETS);
+	}
+
+	@Override
+	public void add(Event event) {
+		event.setCalendarSequence(sequence++);
+		insert(event);
+		size++;
+		if (size > 2 * nbBuckets)
+			resize(2 * nbBuckets);
+	}
+
+	@Override
+	public void remove(Event event) {
+		if (!extract(event))
+			return;
+		size--;
+		if (size < nbBuckets / 2 && nbBuckets > MIN_BUCKETS)
+			resize(nbBuckets / 2);
+	}
+
+	@Override
+	public void reschedule(Event event) {
+		if (!extract(event)) {
+			add(event);
+			return;
+		}
+		event.setCalendarSequence(sequence++);
+		insert(event);
+	}
+
+	@Override
+	public Event peek() {
+		if (size == 0)
+			return null;
+		int i = lastBucket;
+		long top = bucketTop;
+		for (int k = 0; k < nbBuckets; k++) {
+			ArrayList<Event> bucket = buckets[i];
+			if (!bucket.isEmpty() && bucket.get(0).getEventDate() < top) {
+				lastBucket = i;
+				bucketTop = top;
+				return bucket.get(0);
+			}
+			i++;
+			if (i == nbBuckets)
+				i = 0;
+			top += width;
+		}
+		// Nothing in the current year : direct search of the minimum
+		Event min = null;
+		for (ArrayList<Event> bucket : buckets) {
+			if (!bucket.isEmpty()
+					&& (min == null || comparator.compare(bucket.get(0), min) < 0))
+				min = bucket.get(0);
+		}
+		setCurrentDate(min.getEventDate());
+		return min;
+	}
+
+	@Override
+	public Event poll() {
+		Event first = peek();
+		if (first != null)
+			remove(first);
+		return first;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// ------------------------------------------------------------
+	// Insert an event in its bucket (sorted)
+	// ------------------------------------------------------------
+	private void insert(Event event) {
+		int b = bucketOf(event.getEventDate());
+		ArrayList<Event> bucket = buckets[b];
+		int pos = Collections.binarySearch(bucket, event, comparator);
+		if (pos < 0)
+			pos = -pos - 1;
+		bucket.add(pos, event);
+		event.setCalendarIndex(b);
+		// An event before the current year moves back the current bucket
+		if (event.getEventDate() < bucketTop - width)
+			setCurrentDate(event.getEventDate());
+	}
+
+	// ------------------------------------------------------------
+	// Remove an event from its bucket
+	// ------------------------------------------------------------
+	private boolean extract(Event event) {
+		int b = event.getCalendarIndex();
+		if (b < 0 || b >= nbBuckets)
+			return false;
+		ArrayList<Event> bucket = buckets[b];
+		for (int i = 0; i < bucket.size(); i++) {
+			if (bucket.get(i) == event) {
+				bucket.remove(i);
+				event.setCalendarIndex(-1);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int bucketOf(long date) {
+		return (int) ((date / width) % nbBuckets);
+	}
+
+	private void setCurrentDate(long date) {
+		lastBucket = bucketOf(date);
+		bucketTop = (date / width + 1) * width;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void createBuckets(int n) {
+		nbBuckets = n;
+		buckets = (ArrayList<Event>[]) new ArrayList<?>[n];
+		for (int i = 0; i < n; i++)
+			buckets[i] = new ArrayList<Event>();
+	}
+
+	// ------------------------------------------------------------
+	// Change the number of buckets and estimate a new width from the
+	// average separation of the first events
+	// ------------------------------------------------------------
+	private void resize(int n) {
+		Event[] events = new Event[size];
+		int k = 0;
+		for (ArrayList<Event> bucket : buckets)
+			for (Event e : bucket)
+				events[k++] = e;
+
+		long[] dates = new long[size];
+		for (int i = 0; i < size; i++)
+			dates[i] = events[i].getEventDate();
+		Arrays.sort(dates);
+		int sample = Math.min(size, SAMPLE_SIZE);
+		if (sample > 1) {
+			long w = 3 * (dates[sample - 1] - dates[0]) / (sample - 1);
+			width = Math.max(1, w);
+		}
+
+		createBuckets(n);
+		for (Event e : events) {
+			int b = bucketOf(e.getEventDate());
+			ArrayList<Event> bucket = buckets[b];
+			int pos = Collections.binarySearch(bucket, e, comparator);
+			if (pos < 0)
+				pos = -pos - 1;
+			bucket.add(pos, e);
+			e.setCalendarIndex(b);
+		}
+		if (size > 0)
+			setCurrentDate(dates[0]);
+		else
+			setCurrentDate(0);
+	}
+}
@@ -0,0 +1,69 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package synchronization;
+
+import wisen_simulation2.Event;
+
+/**
+ * @version 1.0
+ *
+ *          Pending event set of the scheduler. The events are ordered by
+ *          (eventDate, epsilon) as defined by Event.compareTo, equal events
+ *          are served in the order they have been (re)scheduled.
+ */
+public interface EventCalendar {
+
+	/**
+	 * Add an event to the calendar
+	 *
+	 * @param event
+	 */
+	public void add(Event event);
+
+	/**
+	 * Remove an event from the calendar
+	 *
+	 * @param event
+	 */
+	public void remove(Event event);
+
+	/**
+	 * Move an event whose date has been changed to its new place
+	 *
+	 * @param event
+	 */
+	public void reschedule(Event event);
+
+	/**
+	 * @return the first event without removing it (null if empty)
+	 */
+	public Event peek();
+
+	/**
+	 * @return the first event after removing it (null if empty)
+	 */
+	public Event poll();
+
+	/**
+	 * @return the number of pending events
+	 */
+	public int size();
+
+}
@@ -19,39 +19,41 @@
 
 package synchronization;
 
-import java.util.Collections;
-import java.util.Vector;
-
 import wisen_simulation2.Event;
 
 public class Scheduler {
 
-	public Vector<Event> listEvents;
-	SchedulerComparator comparator = null;
+	private EventCalendar calendar = null;
 
 	public Scheduler() {
-		comparator = new SchedulerComparator();
-		listEvents = new Vector<Event>();
+		this(EventCalendarType.BINARY_HEAP);
+	}
+
+	public Scheduler(EventCalendarType type) {
+		if (type == EventCalendarType.CALENDAR_QUEUE)
+			calendar = new CalendarQueue();
+		else
+			calendar = new BinaryHeapCalendar();
 	}
 
-	public Event getNextEvent() {
-		if (listEvents.size() <= 0)
-			return null;
+	public synchronized Event getNextEvent() {
+		return calendar.peek();
+	}
 
-		return listEvents.get(0);
+	public synchronized void addEvent(Event event) {
+		calendar.add(event);
 	}
 
-	public void addEvent(Event event) {
-		listEvents.add(event);
-		sort();
+	public synchronized void removeEvent(Event event) {
+		calendar.remove(event);
 	}
 
-	public void removeEvent(Event event) {
-		listEvents.remove(event);
+	// The date of the event has changed
+	public synchronized void reschedule(Event event) {
+		calendar.reschedule(event);
 	}
 
-	// a optimiser ...
-	public void sort() {
-		Collections.sort(listEvents, comparator);
+	public synchronized int size() {
+		return calendar.size();
 	}
 }
@@ -27,6 +27,12 @@ public class SchedulerComparator implements Comparator<Event> {
 
 	@Override
 	public int compare(Event e1, Event e2) {
-		return e1.compareTo(e2);
+		int c = e1.compareTo(e2);
+		if (c != 0)
+			return c;
+		// Equal events : first (re)scheduled, first served
+		if (e1.getCalendarSequence() == e2.getCalendarSequence())
+			return 0;
+		return (e1.getCalendarSequence() < e2.getCalendarSequence()) ? -1 : 1;
 	}
 }
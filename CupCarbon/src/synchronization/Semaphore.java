@@ -19,38 +19,28 @@
 
 package synchronization;
 
+/**
+ * Counting semaphore used between the simulation and the device threads.
+ * It relies on java.util.concurrent (no monitor), so a waiting virtual
+ * thread releases its carrier thread.
+ */
 public class Semaphore {
 
-	private int resourcesNumber;
+	private java.util.concurrent.Semaphore semaphore;
 
 	// =============================================================
 	public Semaphore(int resourcesnumber) {
-		resourcesNumber = resourcesnumber;
+		semaphore = new java.util.concurrent.Semaphore(resourcesnumber);
 	}
 
 	// =============================================================
-	synchronized public void P() {
-		boolean Retour;
-		resourcesNumber--;
-		if (resourcesNumber < 0) {
-			do {
-				Retour = false;
-				try {
-					wait();
-				} catch (InterruptedException e) {
-					System.out.println("Oups : error");
-					Retour = true;
-				}
-			} while (Retour);
-		}
+	public void P() {
+		semaphore.acquireUninterruptibly();
 	}
 
 	// =============================================================
-	synchronized public void V() {
-		resourcesNumber++;
-		if (resourcesNumber <= 0) {
-			notify();
-		}
+	public void V() {
+		semaphore.release();
 	}
 	// =============================================================
 }
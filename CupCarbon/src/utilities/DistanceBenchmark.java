@@ -0,0 +1,124 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import map.Layer;
+
+import org.jdesktop.swingx.JXMapViewer;
+
+import device.Device;
+import device.Sensor;
+
+/**
+ * @version 1.0
+ *
+ *          Benchmark of the pair checks (radioDetect) on the sphere
+ *          (MapCalc.distance) and in the plane of MapCalc (squared
+ *          distances). The sensors are placed at random in a square around
+ *          the origin, all the pairs are tested. It also gives the number of
+ *          pairs where the two modes do not agree.
+ *
+ *          Arguments: [number of sensors] [size of the square (m)] [radio
+ *          radius (m)] [repetitions]
+ */
+public class DistanceBenchmark {
+
+	private static int n = 2000;
+	private static double size = 20000;
+	private static double radioRadius = 500;
+	private static int repetitions = 5;
+
+	// ------------------------------------------------------------
+	// Returns the number of links (all the pairs are tested)
+	// ------------------------------------------------------------
+	private static long links(List<Device> devices) {
+		long links = 0;
+		for (Device d1 : devices)
+			for (Device d2 : devices)
+				if (d1.radioDetect(d2))
+					links++;
+		return links;
+	}
+
+	// ------------------------------------------------------------
+	// Returns the number of pair checks by second
+	// ------------------------------------------------------------
+	private static double run(List<Device> devices, boolean planar) {
+		MapCalc.setPlanar(planar);
+		links(devices);
+		long start = System.nanoTime();
+		for (int k = 0; k < repetitions; k++)
+			links(devices);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return (double) repetitions * devices.size() * devices.size()
+				/ seconds;
+	}
+
+	public static void main(String[] args) {
+		if (args.length > 0)
+			n = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			size = Double.parseDouble(args[1]);
+		if (args.length > 2)
+			radioRadius = Double.parseDouble(args[2]);
+		if (args.length > 3)
+			repetitions = Integer.parseInt(args[3]);
+
+		// The devices are created without window
+		System.setProperty("java.awt.headless", "true");
+		new Layer(new JXMapViewer());
+
+		double latitude = 48.39;
+		double longitude = -4.49;
+		MapCalc.setOrigin(latitude, longitude);
+		double dLat = Math.toDegrees(size / MapCalc.EARTH_RADIUS);
+		double dLon = dLat / Math.cos(Math.toRadians(latitude));
+		Random random = new Random(0);
+		List<Device> devices = new ArrayList<Device>();
+		for (int i = 0; i < n; i++)
+			devices.add(new Sensor(latitude + (random.nextDouble() - 0.5)
+					* dLat, longitude + (random.nextDouble() - 0.5) * dLon, 0,
+					radioRadius, 0));
+
+		boolean planar = MapCalc.isPlanar();
+		System.out.println(n + " sensors, " + size + " m, radio radius "
+				+ radioRadius + " m");
+		System.out.printf("Sphere : %.1f M pair checks/s%n",
+				run(devices, false) / 1e6);
+		System.out.printf("Plane  : %.1f M pair checks/s%n",
+				run(devices, true) / 1e6);
+
+		long different = 0;
+		for (Device d1 : devices)
+			for (Device d2 : devices) {
+				MapCalc.setPlanar(false);
+				boolean sphere = d1.radioDetect(d2);
+				MapCalc.setPlanar(true);
+				if (sphere != d1.radioDetect(d2))
+					different++;
+			}
+		System.out.println("Different pairs : " + different);
+		MapCalc.setPlanar(planar);
+	}
+}
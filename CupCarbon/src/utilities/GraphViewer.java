@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedList;
 
 import javax.swing.BorderFactory;
@@ -53,6 +54,7 @@ import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import project.Project;
+import wisen_simulation2.ResultStore;
 
 public class GraphViewer extends JInternalFrame implements ActionListener {
 
@@ -71,6 +73,17 @@ public class GraphViewer extends JInternalFrame implements ActionListener {
 	private LinkedList<JCheckBox> sensors;
 	private LinkedList<JCheckBox> sensors1;
 	private Db db;
+	// Devices of the result stores : store and column of each name (name of
+	// the file and user id of the device, two runs of a project have the
+	// same devices)
+	private HashMap<String, ResultStore> stores = new HashMap<String, ResultStore>();
+	private HashMap<String, Integer> columns = new HashMap<String, Integer>();
+	private HashMap<ResultStore, long[]> dates = new HashMap<ResultStore, long[]>();
+	// Opened result stores (closed by dispose)
+	private HashMap<String, ResultStore> files = new HashMap<String, ResultStore>();
+
+	// Number of devices of a store displayed when it is loaded
+	public static final int MAX_SERIES = 10;
 	
 	public GraphViewer() {
 	
@@ -151,6 +164,80 @@ public class GraphViewer extends JInternalFrame implements ActionListener {
 
 	}
 	
+	/**
+	 * Add the devices of a result store (the MAX_SERIES first ones are
+	 * displayed)
+	 * 
+	 * @param fileName
+	 */
+	public void addStore(String fileName) {
+		addStore(fileName, null);
+	}
+
+	/**
+	 * Add the devices of a result store
+	 * 
+	 * @param fileName
+	 * @param displayed
+	 *            Columns (devices) to display, null for the MAX_SERIES first
+	 *            ones
+	 */
+	public void addStore(String fileName, int[] displayed) {
+		if (files.containsKey(fileName))
+			return;
+		ResultStore store;
+		try {
+			store = ResultStore.open(fileName);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		files.put(fileName, store);
+		dates.put(store, store.getDates());
+		String prefix = new File(fileName).getName() + " : ";
+		boolean[] selected = new boolean[store.getNumberOfColumns()];
+		if (displayed == null) {
+			for (int c = 0; c < Math.min(MAX_SERIES, selected.length); c++)
+				selected[c] = true;
+		} else
+			for (int c : displayed)
+				selected[c] = true;
+
+		for (int c = 0; c < store.getNumberOfColumns(); c++) {
+			String name = prefix + store.getUserId(c);
+			stores.put(name, store);
+			columns.put(name, c);
+			JCheckBox chckbxNewCheckBox = new JCheckBox(name);
+			this.sensors.add(chckbxNewCheckBox);
+			chckbxNewCheckBox.setBackground(new Color(200, 200, 255));
+			chckbxNewCheckBox.setBorder(new LineBorder(Color.BLACK));
+			chckbxNewCheckBox.setSelected(selected[c]);
+			chckbxNewCheckBox.addActionListener(this);
+			if (selected[c]) {
+				ajouterColonne(name);
+				this.sensors1.add(chckbxNewCheckBox);
+			}
+			JLabel l = new JLabel(" ");
+			l.setPreferredSize(new Dimension(50, 5));
+			this.sensorsList.add(l);
+			this.sensorsList.add(chckbxNewCheckBox);
+		}
+		this.sensorsList.validate();
+		graphe.revalidate();
+	}
+
+	// Add the curve of a device of a result store
+	private void ajouterColonne(String name) {
+		ResultStore store = stores.get(name);
+		long[] x = dates.get(store);
+		double[] y = store.getColumn(columns.get(name));
+		series = new XYSeries(name);
+		for (int i = 0; i < x.length; i++)
+			series.add(x[i], y[i], false);
+		series.fireSeriesChanged();
+		this.dataset.addSeries(series);
+	}
+
 	private ChartPanel graphe() {
 
 		JFreeChart graph = ChartFactory.createXYLineChart("Sensors Energy",
@@ -234,7 +321,9 @@ public class GraphViewer extends JInternalFrame implements ActionListener {
 		File file = new File(spth);
 		String[] list = file.list();
 		for (int i = 0; i < list.length; i++) {
-			if (list[i].charAt(0) != '.')
+			if (list[i].endsWith(ResultStore.EXTENSION))
+				addStore(spth+File.separator+list[i]);
+			else if (list[i].charAt(0) != '.')
 				addSensor(spth+File.separator+list[i]);
 		}
 
@@ -247,11 +336,16 @@ public class GraphViewer extends JInternalFrame implements ActionListener {
 			JFileChooser fileopen = new JFileChooser();
 			FiltreSimple filter = new FiltreSimple("Fichier res", "res");
 			fileopen.addChoosableFileFilter(filter);
+			fileopen.addChoosableFileFilter(new FiltreSimple(
+					"Result store", ResultStore.EXTENSION.substring(1)));
 			int ret = fileopen.showDialog(null, "Open file");
 			if (ret == JFileChooser.APPROVE_OPTION) {
 				File file = fileopen.getSelectedFile();
 				System.out.println(file.getPath());
-				this.addSensor(file.getPath());
+				if (file.getPath().endsWith(ResultStore.EXTENSION))
+					this.addStore(file.getPath());
+				else
+					this.addSensor(file.getPath());
 
 			}
 
@@ -265,7 +359,10 @@ public class GraphViewer extends JInternalFrame implements ActionListener {
 						if (!this.isExist(check)) {
 							String s = check.getText();
 							s = s.substring(1);
-							ajouterFichier(this.db.getPath(check.getText()));
+							if (stores.containsKey(check.getText()))
+								ajouterColonne(check.getText());
+							else
+								ajouterFichier(this.db.getPath(check.getText()));
 							sensors1.addLast(check);
 							this.graphe.revalidate();
 						}
@@ -284,6 +381,25 @@ public class GraphViewer extends JInternalFrame implements ActionListener {
 
 	}
 
+	/**
+	 * Close the result stores
+	 */
+	@Override
+	public void dispose() {
+		for (ResultStore store : files.values()) {
+			try {
+				store.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		files.clear();
+		stores.clear();
+		columns.clear();
+		dates.clear();
+		super.dispose();
+	}
+
 	private void removeSerie(String serie) {
 		System.out.println(serie + " " + this.getSeriesNum(serie));
 		dataset.removeSeries(this.getSeriesNum(serie));
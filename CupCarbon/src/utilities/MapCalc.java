@@ -25,6 +25,7 @@ import java.awt.geom.Point2D;
 import map.Layer;
 
 import org.jdesktop.swingx.mapviewer.GeoPosition;
+import org.jdesktop.swingx.mapviewer.TileFactory;
 
 /**
  * @author Ahcene Bounceur
@@ -32,6 +33,26 @@ import org.jdesktop.swingx.mapviewer.GeoPosition;
  */
 public class MapCalc {
 
+	public static final double EARTH_RADIUS = 6378137;
+
+	// Planar mode : the distances between the devices are computed in a
+	// local plane (east, north) in meters, tangent to the earth at the origin
+	// (equirectangular projection, accurate to a few centimeters for a
+	// network of less than 20 km)
+	private static boolean planar = false;
+	private static double originLatitude = Double.NaN;
+	private static double originLongitude = 0;
+	private static double cosOrigin = 1;
+	// Changes each time the origin changes (the projected positions of the
+	// devices must be computed again)
+	private static int frame = 0;
+
+	// Number of pixels for 100 meters (radiusInPixels) at the zoom scaleZoom
+	// of the tile factory scaleFactory
+	private static int scale = 0;
+	private static int scaleZoom = -1;
+	private static TileFactory scaleFactory = null;
+
 	/**
 	 * This function returns the coordinates of the pixel of the map that
 	 * corresponds to a given GPS coordinates (x, y). Note that this pixel is
@@ -158,22 +179,83 @@ public class MapCalc {
 		return (earth_radius * d);
 	}
 
+	/**
+	 * @return if the distances between the devices are computed in the plane
+	 *         of the origin
+	 */
+	public static boolean isPlanar() {
+		return planar;
+	}
+
+	/**
+	 * @param planar
+	 *            Compute the distances between the devices in the plane of
+	 *            the origin (true) or on the sphere (false, default)
+	 */
+	public static void setPlanar(boolean planar) {
+		MapCalc.planar = planar;
+	}
+
+	/**
+	 * Set the origin of the plane (the center of the project)
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 */
+	public static synchronized void setOrigin(double latitude, double longitude) {
+		originLatitude = latitude;
+		originLongitude = longitude;
+		cosOrigin = Math.cos(Math.toRadians(latitude));
+		frame++;
+	}
+
+	/**
+	 * @return the number of the current plane (changed by setOrigin)
+	 */
+	public static int getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Coordinates in the plane of the origin (the first point projected is
+	 * the origin if it has not been set)
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param xy
+	 *            Receives the east and north coordinates (meters)
+	 */
+	public static synchronized void toPlane(double latitude, double longitude,
+			double[] xy) {
+		if (Double.isNaN(originLatitude))
+			setOrigin(latitude, longitude);
+		xy[0] = Math.toRadians(longitude - originLongitude) * EARTH_RADIUS
+				* cosOrigin;
+		xy[1] = Math.toRadians(latitude - originLatitude) * EARTH_RADIUS;
+	}
+
 	/**
 	 * Calculate the number of pixels that corresponds to a given radius
 	 * 
 	 * @param radius
 	 * @return The number of pixels that corresponds to a given radius
 	 */
-	public static int radiusInPixels(double radius) {
-		GeoPosition p1 = new GeoPosition(36.000000, 40.000000);
-		Point2D pt1 = Layer.getMapViewer().getTileFactory()
-				.geoToPixel(p1, Layer.getMapViewer().getZoom());
-		int v1 = (int) pt1.getX();
-		GeoPosition p2 = new GeoPosition(36.000000, 40.0011125);
-		Point2D pt2 = Layer.getMapViewer().getTileFactory()
-				.geoToPixel(p2, Layer.getMapViewer().getZoom());
-		int v2 = (int) pt2.getX();
-		int rp = (int) (radius * (v2 - v1) / 100);
+	public static synchronized int radiusInPixels(double radius) {
+		int zoom = Layer.getMapViewer().getZoom();
+		TileFactory factory = Layer.getMapViewer().getTileFactory();
+		// The scale is only computed when the zoom changes
+		if (zoom != scaleZoom || factory != scaleFactory) {
+			GeoPosition p1 = new GeoPosition(36.000000, 40.000000);
+			Point2D pt1 = factory.geoToPixel(p1, zoom);
+			int v1 = (int) pt1.getX();
+			GeoPosition p2 = new GeoPosition(36.000000, 40.0011125);
+			Point2D pt2 = factory.geoToPixel(p2, zoom);
+			int v2 = (int) pt2.getX();
+			scale = v2 - v1;
+			scaleZoom = zoom;
+			scaleFactory = factory;
+		}
+		int rp = (int) (radius * scale / 100);
 		return rp;
 	}
 }
@@ -0,0 +1,151 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2014 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import simbox_simulation.LinkMatrix;
+import simbox_simulation.NetworkGeneratorForCpu;
+import device.Device;
+import device.DeviceList;
+
+/**
+ * @version 1.0
+ * 
+ *          Second stage of the WISEN pipeline (with mobility) : during the
+ *          consumption of the iteration t, which reads the links of t, the
+ *          devices whose move ends at t are moved and the links of t+1 are
+ *          computed in a second matrix (double buffering). The two matrices
+ *          are exchanged at the end of the iteration.
+ * 
+ *          The second matrix is one iteration late, so it receives the links
+ *          of the devices moved during the two last iterations.
+ */
+public class WisenLinkUpdater extends Thread {
+
+	private List<Device> devices;
+	private int[] event2;
+	private boolean visual;
+	private int visualDelay;
+
+	// Links read by the consumption (front) and computed (back)
+	private LinkMatrix front;
+	private LinkMatrix back;
+	private List<Device> lastMoved = new ArrayList<Device>();
+
+	private Semaphore start = new Semaphore(0);
+	private Semaphore done = new Semaphore(0);
+	private int min;
+	private boolean stop = false;
+	private RuntimeException error = null;
+
+	/**
+	 * @param devices
+	 * @param event2
+	 *            Times before the next moves (changed by the updater)
+	 * @param links
+	 *            The links of the first iteration
+	 * @param visual
+	 * @param visualDelay
+	 */
+	public WisenLinkUpdater(List<Device> devices, int[] event2,
+			LinkMatrix links, boolean visual, int visualDelay) {
+		super("WisenLinkUpdater");
+		setDaemon(true);
+		this.devices = devices;
+		this.event2 = event2;
+		this.visual = visual;
+		this.visualDelay = visualDelay;
+		front = links;
+		back = links.copy();
+	}
+
+	/**
+	 * Start the moves and the links of the next iteration
+	 * 
+	 * @param min
+	 *            Duration of the current iteration
+	 */
+	public void next(int min) {
+		this.min = min;
+		start.release();
+	}
+
+	/**
+	 * Wait for the end of the moves and exchange the matrices
+	 * 
+	 * @return the links of the next iteration
+	 */
+	public LinkMatrix await() {
+		done.acquireUninterruptibly();
+		if (error != null)
+			throw error;
+		LinkMatrix links = back;
+		back = front;
+		front = links;
+		return front;
+	}
+
+	/**
+	 * Stop the thread (after await)
+	 */
+	public void finish() {
+		stop = true;
+		start.release();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			start.acquireUninterruptibly();
+			if (stop)
+				return;
+			try {
+				move();
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			done.release();
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Moves of the iteration and links of the next one
+	// ------------------------------------------------------------
+	private void move() {
+		for (int i = 0; i < event2.length; i++) {
+			event2[i] -= min;
+			if (event2[i] == 0) {
+				if (devices.get(i).canMove()) {
+					devices.get(i).exeNext(visual, visualDelay);
+					event2[i] = devices.get(i).getNextTime();
+				}
+			}
+		}
+		List<Device> moved = DeviceList.takeMovedNodes();
+		List<Device> update = new ArrayList<Device>(lastMoved);
+		update.addAll(moved);
+		NetworkGeneratorForCpu.updateLinks(back, DeviceList.getSpatialIndex(),
+				update);
+		lastMoved = moved;
+	}
+}
@@ -0,0 +1,170 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2014 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import simbox_simulation.ResultSink;
+
+/**
+ * @version 1.0
+ * 
+ *          Third stage of the WISEN pipeline : writes the frames of the
+ *          results while the next iterations are simulated. The energies are
+ *          copied in one of two buffers (double buffering), so the simulation
+ *          only waits when the writing is two frames late.
+ */
+public class WisenResultWriter extends Thread {
+
+	private static final int NB_BUFFERS = 2;
+
+	// ------------------------------------------------------------
+	// One frame (time and energies of an iteration)
+	// ------------------------------------------------------------
+	private static class Frame {
+		private long time;
+		private int[] energy;
+		private boolean end = false;
+	}
+
+	private ResultSink results;
+	private BlockingQueue<Frame> free = new ArrayBlockingQueue<Frame>(NB_BUFFERS);
+	private BlockingQueue<Frame> full = new ArrayBlockingQueue<Frame>(
+			NB_BUFFERS + 1);
+	private IOException error = null;
+	// A RuntimeException of the sink is given to the simulation at the next
+	// frame (or at the close)
+	private RuntimeException failure = null;
+
+	/**
+	 * @param results
+	 *            The sink of the frames
+	 * @param nbSensors
+	 *            Number of sensors
+	 */
+	public WisenResultWriter(ResultSink results, int nbSensors) {
+		super("WisenResultWriter");
+		setDaemon(true);
+		this.results = results;
+		for (int i = 0; i < NB_BUFFERS; i++) {
+			Frame frame = new Frame();
+			frame.energy = new int[nbSensors];
+			free.add(frame);
+		}
+	}
+
+	/**
+	 * Give a frame to the writer (the energies are copied)
+	 * 
+	 * @param time
+	 * @param energy
+	 * @throws InterruptedException
+	 */
+	public void write(long time, int[] energy) throws InterruptedException {
+		Frame frame = take();
+		frame.time = time;
+		System.arraycopy(energy, 0, frame.energy, 0, energy.length);
+		full.put(frame);
+	}
+
+	/**
+	 * Give a frame to the writer when the energies are computed lazily : the
+	 * energy of the sensor i at the time is energy[i] minus its consumption
+	 * rate[i] since the time since[i]
+	 * 
+	 * @param time
+	 * @param energy
+	 * @param since
+	 * @param rate
+	 * @throws InterruptedException
+	 */
+	public void write(long time, int[] energy, long[] since, int[] rate)
+			throws InterruptedException {
+		Frame frame = take();
+		frame.time = time;
+		for (int i = 0; i < energy.length; i++) {
+			long e = energy[i] - (long) rate[i] * (time - since[i]);
+			frame.energy[i] = (e < 0) ? 0 : (int) e;
+		}
+		full.put(frame);
+	}
+
+	// ------------------------------------------------------------
+	// Free buffer of the next frame, throws the RuntimeException of the
+	// writing of a previous frame
+	// ------------------------------------------------------------
+	private Frame take() throws InterruptedException {
+		Frame frame = free.take();
+		if (failure != null) {
+			free.put(frame);
+			throw failure;
+		}
+		return frame;
+	}
+
+	/**
+	 * Wait for the writing of the last frames and close the sink
+	 * 
+	 * @param time
+	 * @param energy
+	 *            The final state of the simulation (see ResultSink.close)
+	 * @throws IOException
+	 *             the first error of the writing
+	 * @throws InterruptedException
+	 */
+	public void close(long time, int[] energy) throws IOException,
+			InterruptedException {
+		Frame end = new Frame();
+		end.end = true;
+		full.put(end);
+		join();
+		results.close(time, energy, null);
+		if (failure != null)
+			throw failure;
+		if (error != null)
+			throw error;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				Frame frame = full.take();
+				if (frame.end)
+					return;
+				// After an error, the frames are only given back
+				if (error == null && failure == null) {
+					try {
+						results.write(frame.time, frame.energy, null);
+					} catch (IOException e) {
+						error = e;
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+				}
+				free.put(frame);
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+}
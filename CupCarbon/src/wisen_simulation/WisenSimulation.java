@@ -19,16 +19,16 @@
 
 package wisen_simulation;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.List;
-import java.util.ListIterator;
 
 import map.Layer;
-import project.Project;
+import simbox_simulation.CpuSimulation;
+import simbox_simulation.IndexedMinHeap;
+import simbox_simulation.LinkMatrix;
+import simbox_simulation.NetworkGeneratorForCpu;
+import simbox_simulation.ResultSink;
 import simbox_simulation.SimulationInputs;
-import cupcarbon.WsnSimulationWindow;
 import device.Device;
 import device.DeviceList;
 
@@ -53,13 +53,31 @@ public class WisenSimulation extends Thread {
 	private int[] deadSensor;
 	private int[] energy;
 	private byte eRTx = 1;
-	private byte[][] links;
+	private LinkMatrix links;
+	private int[] sending;
 	private List<Device> deviceList = DeviceList.getNodes();
-	private PrintStream ps;
+	private WisenResultWriter writer;
+	private WisenLinkUpdater linkUpdater = null;
 	private long time ;
 	private int min ;
 	private long iter;
 
+	// Without mobility : absolute times of the ends of the instructions
+	// and consumptions (only changed when a linked sensor starts or stops
+	// sending). energy[i] is the energy at the time since[i], checks
+	// contains the times when the sensors would have no more energy with
+	// their highest consumptions maxRate (see
+	// CpuSimulation.simulateEvents).
+	private IndexedMinHeap events;
+	private IndexedMinHeap checks;
+	private int[][] receivers;
+	private int[] rate;
+	private int[] maxRate;
+	private long[] since;
+	private int[] changed;
+	private int[] now;
+	private int alive;
+
 	private boolean visual;
 	private int visualDelay;
 
@@ -84,12 +102,13 @@ public class WisenSimulation extends Thread {
 		SimulationInputs.gpuScript = null;
 		SimulationInputs.gpuLinks = null;
 		script = SimulationInputs.script;
-		links = SimulationInputs.links;
+		links = SimulationInputs.linkMatrix;
 
 		iscript = new byte[nbSensors];
 		event = new int[nbSensors];
 		event2 = new int[nbSensors];
 		deadSensor = new int[nbSensors];
+		sending = new int[nbSensors];
 		energy = new int[nbSensors];
 
 	}
@@ -98,7 +117,7 @@ public class WisenSimulation extends Thread {
 	// Run simulation
 	// ------------------------------------------------------------
 	public void simulate() {
-		WsnSimulationWindow.setState("Simulation : initialization ...");
+		SimulationInputs.listener.stateChanged("Simulation : initialization ...");
 		System.out.println("Initialization ... ");
 		int k = 0;
 		for (Device device : deviceList) {
@@ -114,58 +133,65 @@ public class WisenSimulation extends Thread {
 			}
 			k++;
 		}
+		if (!mobility)
+			initEvents();
 		System.out.println("End of Initialization.");
 		min = 0;
 		time = 0;
 		long startTime = System.currentTimeMillis();
 		System.out.println("Start Simulation (CPU-WISEN : D-Event) ... ");
 
-		WsnSimulationWindow.setState("Simulation : End of initialization.");
-		WsnSimulationWindow.setState("Simulate (CPU-WISEN) ...");
+		SimulationInputs.listener.stateChanged("Simulation : End of initialization.");
+		SimulationInputs.listener.stateChanged("Simulate (CPU-WISEN) ...");
 
 		try {
 			String as = "";
 			if (mobility)
 				as = "_mob";
-			ps = new PrintStream(new FileOutputStream(
-					Project.getProjectResultsPath() + "/cpu_wisen_simulation" + as
-							+ ".csv"));			
+			ResultSink results = ResultSink.newInstance("cpu_wisen_simulation" + as);
 
 			//----------------------------------------------------------------
+			// Pipeline : the frame of the iteration t is written and the
+			// links of t+1 are computed (with mobility) during the
+			// consumption of t
 			//----------------------------------------------------------------
-			//----------------------------------------------------------------						
 			
 			iter = 0;
-			
-			WisenSemaphore wisenSemaphorePing = new WisenSemaphore(false) ;
-			WisenSemaphore wisenSemaphorePong = new WisenSemaphore(true) ;
-			
-			WisenPing wisenPing = new WisenPing(wisenSemaphorePing, wisenSemaphorePong, this);
-			WisenPong wisenPong = new WisenPong(wisenSemaphorePing, wisenSemaphorePong, this);
-			wisenPing.start();
-			wisenPong.start();	
+			writer = new WisenResultWriter(results, nbSensors);
+			writer.start();
+			if (mobility) {
+				NetworkGeneratorForCpu.updateLinks(links,
+						DeviceList.getSpatialIndex(), DeviceList.takeMovedNodes());
+				linkUpdater = new WisenLinkUpdater(deviceList, event2, links,
+						visual, visualDelay);
+				linkUpdater.start();
+			}
 			try {
-				wisenPong.join();
-				wisenPong.join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				boolean running = true;
+				while (running) {
+					eventGenerator();
+					running = eventExecutor();
+				}
+			} finally {
+				if (linkUpdater != null)
+					linkUpdater.finish();
+				if (!mobility)
+					for (int i = 0; i < nbSensors; i++)
+						update(i, time);
+				writer.close(time, energy);
 			}
-			
-			//----------------------------------------------------------------
-			//----------------------------------------------------------------
-			//----------------------------------------------------------------			
-			
-			ps.close();
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 		long endTime = System.currentTimeMillis();
 		System.out.println("End of Simulation (CPU-WISEN : D-Event).");
 		System.out.println(((endTime - startTime) / 1000.) + " sec");
-		WsnSimulationWindow.setState("End (CPU Sim) at iter " + iter
+		SimulationInputs.listener.stateChanged("End (CPU Sim) at iter " + iter
 				+ ". Simulation Time : " + ((endTime - startTime) / 1000.)
 				+ " sec.");
-		WsnSimulationWindow.setProgress(0);
+		SimulationInputs.listener.progressChanged(0);
 		int i = 0;
 		for (Device device : deviceList) {
 			device.getBattery().setCapacity(energy[i++]);
@@ -180,48 +206,18 @@ public class WisenSimulation extends Thread {
 	}	
 	
 	// ------------------------------------------------------------
-	// Event Generator
+	// Event Generator : the frame is given to the writer and the next
+	// event is selected
 	// ------------------------------------------------------------
-	public void eventGenerator() {
+	public void eventGenerator() throws InterruptedException {
 		int min1;
 		int min2;
-		ps.print(time + ";");
-
-		for (int i = 0; i < nbSensors; i++) {
-			ps.print(energy[i] + ";");
-		}
-		ps.println();
+		if (mobility)
+			writer.write(time, energy);
+		else
+			writer.write(time, energy, since, rate);
 
 		if (mobility) {
-			Device d1 = null;
-			Device d2 = null;
-			ListIterator<Device> iterator;
-			ListIterator<Device> iterator2;
-			iterator = DeviceList.getNodes().listIterator();
-			int n = DeviceList.size();
-			int i2 = 0;
-			int j2 = 0;
-			while (iterator.hasNext()) {
-				d1 = iterator.next();
-				links[i2][i2] = 1;
-				if (iterator.nextIndex() < n) {
-					j2 = i2 + 1;
-					iterator2 = DeviceList.getNodes().listIterator(iterator
-							.nextIndex());
-					while (iterator2.hasNext()) {
-						d2 = iterator2.next();
-						if (d1.radioDetect(d2)) {
-							links[i2][j2] = 1;
-							links[j2][i2] = 1;
-						} else {
-							links[i2][j2] = 0;
-							links[j2][i2] = 0;
-						}
-						j2++;
-					}
-					i2++;
-				}
-			}
 			if (discreteEvent) {
 				min1 = getMin();
 				min2 = getMin2();
@@ -233,28 +229,35 @@ public class WisenSimulation extends Thread {
 				min = min1;
 			if (min2 < min1)
 				min = min2;
-		} else
-			min = getMin();
+		} else {
+			// The dead sensors have an event in 99999999
+			long next = events.peekKey();
+			if (alive < nbSensors)
+				next = Math.min(next, time + 99999999);
+			min = (int) (next - time);
+		}
 	}
 
 	// ------------------------------------------------------------
 	// Event Executor
 	// ------------------------------------------------------------
 	public boolean eventExecutor() {
+		if (!mobility)
+			return executeEvents();
+		// The devices move during the consumption
+		linkUpdater.next(min);
 		time += min;
 		int conso;
+		for (int j = 0; j < nbSensors; j++) {
+			sending[j] = script[j][iscript[j]][0] * (1 - deadSensor[j]);
+		}
+		links.setSending(sending);
 		for (int i = 0; i < nbSensors; i++) {
-			conso = 0;
-			for (int j = 0; j < nbSensors; j++) {
-				conso += links[i][j] * script[j][iscript[j]][0]
-						* (1 - deadSensor[j]);
-			}
+			conso = links.consumption(i, sending);
 			energy[i] -= min * conso * eRTx;
 			if (energy[i] < 0)
 				energy[i] = 0;
 			event[i] -= min;
-			if (mobility)
-				event2[i] -= min;
 		}
 
 		for (int i = 0; i < nbSensors; i++) {
@@ -263,28 +266,125 @@ public class WisenSimulation extends Thread {
 				iscript[i] = (byte) (iscript[i] % scriptSize);
 				event[i] = script[i][iscript[i]][1];
 			}
-			if (mobility)
-				if (event2[i] == 0) {
-					if (deviceList.get(i).canMove()) {
-						deviceList.get(i).exeNext(visual, visualDelay);
-						event2[i] = deviceList.get(i).getNextTime();
-					}
-				}
 			if (energy[i] <= 0) {
 				event[i] = 99999999;
 				deadSensor[i] = 1;
 			}
 		}
-		WsnSimulationWindow.setProgress((int) (1000 * iter / iterNumber));
+		links = linkUpdater.await();
+		return next(!stopSimulation());
+	}
+
+	// ------------------------------------------------------------
+	// End of an iteration
+	// ------------------------------------------------------------
+	private boolean next(boolean alive) {
+		SimulationInputs.listener.progressChanged((int) (1000 * iter / iterNumber));
 		iter++;
-		if((iter<iterNumber) && (!stopSimulation())) {
-			return true;
+		return (iter<iterNumber) && alive;
+	}
+
+	// ------------------------------------------------------------
+	// Initialization of the events without mobility
+	// ------------------------------------------------------------
+	private void initEvents() {
+		events = new IndexedMinHeap(nbSensors);
+		checks = new IndexedMinHeap(nbSensors);
+		receivers = CpuSimulation.receivers(links, nbSensors);
+		rate = new int[nbSensors];
+		maxRate = new int[nbSensors];
+		since = new long[nbSensors];
+		changed = new int[2 * nbSensors];
+		now = new int[nbSensors];
+		for (int i = 0; i < nbSensors; i++) {
+			events.put(i, script[i][0][1]);
+			sending[i] = script[i][0][0];
+			int max = 0;
+			for (int k = 0; k < scriptSize; k++)
+				max = Math.max(max, script[i][k][0]);
+			for (int j : receivers[i])
+				maxRate[j] += max * eRTx;
 		}
-		else {
-			ps.close();
-			return false;
+		links.setSending(sending);
+		alive = (energyMax > 0) ? nbSensors : 0;
+		for (int i = 0; i < nbSensors; i++) {
+			rate[i] = links.consumption(i, sending) * eRTx;
+			if (alive > 0 && maxRate[i] > 0)
+				checks.put(i, depletion(i));
 		}
 	}
+
+	// ------------------------------------------------------------
+	// Event Executor without mobility : only the sensors of the event
+	// read their next instruction, and only the sensors that die or
+	// whose consumption changes have their energy updated
+	// ------------------------------------------------------------
+	private boolean executeEvents() {
+		time += min;
+		int nbChanged = 0;
+		while (checks.peekKey() <= time) {
+			int i = checks.poll();
+			update(i, time);
+			if (energy[i] > 0) {
+				checks.put(i, depletion(i));
+				continue;
+			}
+			deadSensor[i] = 1;
+			alive--;
+			changed[nbChanged++] = i;
+		}
+
+		// The sensors whose instruction ends (an instruction of duration 0
+		// ends at the next iteration)
+		int nbNow = 0;
+		while (events.peekKey() == time) {
+			int i = events.peek();
+			changed[nbChanged++] = i;
+			iscript[i]++;
+			iscript[i] = (byte) (iscript[i] % scriptSize);
+			if (script[i][iscript[i]][1] == 0) {
+				events.remove(i);
+				now[nbNow++] = i;
+			} else
+				events.put(i, time + script[i][iscript[i]][1]);
+		}
+		for (int k = 0; k < nbNow; k++)
+			events.put(now[k], time);
+
+		// New consumptions of the sensors that receive them
+		for (int k = 0; k < nbChanged; k++) {
+			int i = changed[k];
+			if (deadSensor[i] == 1)
+				events.remove(i);
+			int s = script[i][iscript[i]][0] * (1 - deadSensor[i]);
+			if (s == sending[i])
+				continue;
+			int delta = (s - sending[i]) * eRTx;
+			sending[i] = s;
+			for (int j : receivers[i]) {
+				update(j, time);
+				rate[j] += delta;
+			}
+		}
+		return next(alive > 0);
+	}
+
+	// ------------------------------------------------------------
+	// Energy of the sensor i at the time t
+	// ------------------------------------------------------------
+	private void update(int i, long t) {
+		long e = energy[i] - (long) rate[i] * (t - since[i]);
+		energy[i] = (e < 0) ? 0 : (int) e;
+		since[i] = t;
+	}
+
+	// ------------------------------------------------------------
+	// First time when the energy of the sensor i is <= 0 with its highest
+	// consumption (maxRate[i] > 0)
+	// ------------------------------------------------------------
+	private long depletion(int i) {
+		return since[i] + (energy[i] + (long) maxRate[i] - 1) / maxRate[i];
+	}
 	
 	// ------------------------------------------------------------
 	// Run simulation
@@ -294,6 +394,13 @@ public class WisenSimulation extends Thread {
 		simulate();
 	}
 
+	/**
+	 * @return the number of iterations done
+	 */
+	public long getIterations() {
+		return iter;
+	}
+
 	// ------------------------------------------------------------
 	// Min : CurrentEvent 1
 	// ------------------------------------------------------------
@@ -0,0 +1,172 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation2;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import script.CommandType;
+import script.CompiledScript;
+
+/**
+ * @version 1.0
+ *
+ *          The instructions of a script for the DeviceSimulator : one array
+ *          by field (type, date, message, epsilon, power ratio). It is never
+ *          changed, so all the devices of a script share the same instance and
+ *          only keep their position in it.
+ *
+ *          For each position, the next instruction that is not a delay and
+ *          the sum of the delays before it are computed once, so the next
+ *          event of a device is read in O(1).
+ */
+public final class DeviceScript {
+
+	private static Map<CompiledScript, DeviceScript> cache = new WeakHashMap<CompiledScript, DeviceScript>();
+
+	private static final DeviceScript EMPTY = new DeviceScript(null);
+
+	private int size;
+	private Commands[] type;
+	private long[] date;
+	private int[] message;
+	private int[] epsilon;
+	private int[] powerRatio;
+	// From the position k : index of the next instruction that is not a delay
+	// (-1 if there is none) and sum of the delays before it
+	private int[] target;
+	private int[] delay;
+
+	/**
+	 * @param code
+	 * @return the instructions of the compiled script (shared)
+	 */
+	public static synchronized DeviceScript get(CompiledScript code) {
+		DeviceScript script = cache.get(code);
+		if (script == null) {
+			script = new DeviceScript(code);
+			cache.put(code, script);
+		}
+		return script;
+	}
+
+	/**
+	 * @return a script without instructions
+	 */
+	public static DeviceScript empty() {
+		return EMPTY;
+	}
+
+	private DeviceScript(CompiledScript code) {
+		size = (code == null) ? 0 : code.size();
+		type = new Commands[size];
+		date = new long[size];
+		message = new int[size];
+		epsilon = new int[size];
+		powerRatio = new int[size];
+		int eps = 1;
+		for (int k = 0; k < size; k++) {
+			powerRatio[k] = 100;
+			switch (code.getCommand(k)) {
+			case CommandType.SEND:
+				type[k] = Commands.COM_SEND;
+				message[k] = code.getArg(k);
+				epsilon[k] = eps++;
+				powerRatio[k] = code.getArg2(k);
+				break;
+			case CommandType.DELAY:
+				eps = 0;
+				type[k] = Commands.COM_DELAY;
+				date[k] = code.getArg(k);
+				break;
+			case CommandType.BREAK:
+				type[k] = Commands.COM_BREAK;
+				break;
+			default:
+				type[k] = Commands.COM_UNKNOWN;
+			}
+		}
+
+		target = new int[size];
+		delay = new int[size];
+		int last = size - 1;
+		while (last >= 0 && type[last] == Commands.COM_DELAY)
+			last--;
+		if (last < 0) {
+			for (int k = 0; k < size; k++)
+				target[k] = -1;
+			return;
+		}
+		// Backward from the last instruction that is not a delay (the script
+		// is cyclic)
+		for (int n = 0, k = last; n < size; n++, k = (k + size - 1) % size) {
+			if (type[k] != Commands.COM_DELAY) {
+				target[k] = k;
+			} else {
+				int j = (k + 1) % size;
+				target[k] = target[j];
+				delay[k] = (int) date[k] + delay[j];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param k
+	 *            Position in the script
+	 * @return the index of the first instruction from k that is not a delay
+	 *         (-1 if the script only has delays)
+	 */
+	public int target(int k) {
+		return target[k];
+	}
+
+	/**
+	 * @param k
+	 *            Position in the script
+	 * @return the sum of the delays from k to target(k)
+	 */
+	public int delay(int k) {
+		return delay[k];
+	}
+
+	public Commands getType(int k) {
+		return type[k];
+	}
+
+	public long getDate(int k) {
+		return date[k];
+	}
+
+	public int getMessage(int k) {
+		return message[k];
+	}
+
+	public int getEpsilon(int k) {
+		return epsilon[k];
+	}
+
+	public int getPowerRatio(int k) {
+		return powerRatio[k];
+	}
+}
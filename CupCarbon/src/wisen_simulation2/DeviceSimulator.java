@@ -19,16 +19,10 @@
 
 package wisen_simulation2;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.util.List;
-import java.util.Vector;
 
 import project.Project;
+import script.ScriptCompiler;
 import synchronization.Lock;
 import device.Device;
 
@@ -38,42 +32,23 @@ public class DeviceSimulator implements Runnable {
 	// private int id;
 	
 	private String scriptFile = "";
-	private String resultFile = "RS";
 	public Lock lock;
 	private Thread thread = null;
 	private Event currentEvent;
+	// The instructions of the script (shared with the other devices of the
+	// same script), the position of the next one and the next event
+	private DeviceScript script = DeviceScript.empty();
+	private int cursor = 0;
+	private int next = -1;
 	private long clock = 0;
-	private List<Event> events = null;
-	private int eventsNumber = 0;
 	private Simulation simulation = null;
 	private Device device;
 	private int eps = 0;
-	private PrintStream rbr = null;
 
 	public void setScriptFile(String scriptFile) {
 		this.scriptFile = scriptFile ;
 	}
 	
-	public void saveResult(long date) {
-		rbr.println("" + date + " " + device.getId() + " " + device.getUserId()
-				+ " " + device.getBatteryLevel());
-	}
-
-	public void saveResult2() {
-		rbr.println("" + (System.nanoTime() - simulation.getStartTime()) + " "
-				+ device.getId() + " " + device.getUserId() + " "
-				+ device.getBatteryLevel());
-	}
-
-	public String getResultFile() {
-		return resultFile + device.getId();
-	}
-
-	public void setResultFile(String resultFile) {
-		this.resultFile = resultFile;
-		resultFile.replaceAll(" ", "_");
-	}
-
 	public Simulation getSimulator() {
 		return simulation;
 	}
@@ -97,78 +72,30 @@ public class DeviceSimulator implements Runnable {
 	}
 
 	public void loadScript() {
-
 		try {
-			events = new Vector<Event>();
-			BufferedReader br = new BufferedReader(new FileReader(scriptFile));
-			String line;
-			String[] str;
-			Event e = null;
-			int epsilon = 1; // a modifier (en float)
-			// int i=0;
-			while ((line = br.readLine()) != null) {
-				str = line.split(" ");
-				// i++;
-				// JRE 1.7, (ca ne marche pas sur JRE 1.6)
-				// switch (str[0].toLowerCase()) {
-				// case "send": e = new
-				// Event(Integer.parseInt(str[1]),0,Commands.COM_SEND); break;
-				// case "delay": e = new
-				// Event(0,Integer.parseInt(str[1]),Commands.COM_DELAY); break;
-				// case "break": e = new Event(0,0,Commands.COM_BREAK); break;
-				// default : e = new Event(0,0,Commands.COM_UNKNOWN);
-				// }
-
-				// JRE 1.6
-				if (str[0].toLowerCase().equals("send")) {
-					e = new Event(Integer.parseInt(str[1]), 0, epsilon++,
-							Commands.COM_SEND, Integer.parseInt(str[2]));
-				} else if (str[0].toLowerCase().equals("delay")) {
-					epsilon = 0;
-					e = new Event(0, Integer.parseInt(str[1]), 0,
-							Commands.COM_DELAY);
-				} else if (str[0].toLowerCase().equals("break"))
-					e = new Event(0, 0, 0, Commands.COM_BREAK);
-				else
-					e = new Event(0, 0, 0, Commands.COM_UNKNOWN);
-
-				e.setDevice(getDevice());
-				e.setDevicesimulator(this);
-				e.setSimulation(getSimulator());
-				events.add(events.size(), e);
-			}
-			// JOptionPane.showMessageDialog(null, i);
-			br.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			script = DeviceScript.get(ScriptCompiler.compile(scriptFile));
 		} catch (IOException e) {
+			script = DeviceScript.empty();
 			e.printStackTrace();
 		}
-
+		cursor = 0;
+		eps = 0;
 	}
 
 	public void init(Simulation simulator) {
-
-		try {
-			rbr = new PrintStream(new FileOutputStream(
-					Project.getResultFileFromName(getResultFile())));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-
+		// The results are saved by the simulation (ResultStore)
 		this.simulation = simulator;
 		if (scriptAssigned()) {
 			loadScript();
 
-			eventsNumber = events.size();
 			clock = 0;
 			currentEvent = null;
-			if (eventsNumber > 0) {
-				Event First = getNextEvent2();
-				if (First.getEventType() != Commands.COM_BREAK) {
-					clock = First.getEventDate();
-					currentEvent = new Event(First.getMessage(), clock,
-							First.getEpsilon(), First.getEventType());
+			if (script.size() > 0) {
+				int first = nextInstruction();
+				if (!isBreak(first)) {
+					clock = eps;
+					currentEvent = new Event(script.getMessage(first), clock,
+							script.getEpsilon(first), script.getType(first));
 					currentEvent.setDevice(getDevice());
 					currentEvent.setDevicesimulator(this);
 					currentEvent.setSimulation(getSimulator());
@@ -180,19 +107,21 @@ public class DeviceSimulator implements Runnable {
 
 	public void start() {
 		if (currentEvent != null) {
-			thread = new Thread(this);
-			thread.start();
+			if (simulation.getSimulationMode() == SimulationMode.SEQUENTIALMODE) {
+				next = nextInstruction();
+			} else {
+				thread = new DeviceThreadFactory(
+						simulation.getSimulationMode()).newThread(this);
+				thread.start();
+			}
 		}
 	}
 
-	public void end() {
-		rbr.close();
-	}
-
 	@Override
 	public void run() {
-		Event Next = getNextEvent2();
-		while (Next.getEventType() != Commands.COM_BREAK) {
+		next = nextInstruction();
+		boolean more = true;
+		while (more) {
 			lock.P();
 			// if(((System.nanoTime() - simulator.startTime) / (simulator.pas *
 			// 1000000)) >= pas){
@@ -200,39 +129,51 @@ public class DeviceSimulator implements Runnable {
 			// rbr.println(""+(System.nanoTime() -
 			// simulator.startTime)+"  "+device.getId()+"  "+device.getUserid()+"  "+device.getNivBattery());
 			// }
-			clock += Next.getEventDate();
-			currentEvent.update(Next.getMessage(), clock, Next.getEpsilon(),
-					Next.getEventType(), Next.getPowerRatio());
+			more = resume();
 			simulation.getSemaphore().V();
-			Next = getNextEvent2();
-
 		}
-		lock.P();
-		simulation.getScheduler().removeEvent(currentEvent);
-		simulation.getSemaphore().V();
 		System.out.println(" -> " + getDevice().getUserId());
 	}
 
-	public Event getNextEvent() {
-		return events.get(0);
-	}
-
-	public Event getNextEvent2() {
-		int accumulated_delay = 0;
-
-		Event Next = getNextEvent();
-		while (Next.getEventType() == Commands.COM_DELAY) {
-			accumulated_delay += Next.getEventDate();
-			events.remove(0);
-			events.add(eventsNumber - 1, Next);
-			Next = getNextEvent();
+	// ------------------------------------------------------------
+	// Called once the current event has been executed by the
+	// simulation : the current event takes the date of the next
+	// instruction of the script (or leaves the scheduler at the end
+	// of the script). Returns false when the script is finished.
+	// In the sequential mode, it is called directly by the
+	// simulation loop instead of being run by the thread.
+	// ------------------------------------------------------------
+	public boolean resume() {
+		if (!isBreak(next)) {
+			clock += eps;
+			currentEvent.update(script.getMessage(next), clock,
+					script.getEpsilon(next), script.getType(next),
+					script.getPowerRatio(next));
+			next = nextInstruction();
+			return true;
 		}
-
-		eps = eps + accumulated_delay + 1;
-		Next.setEventDate(eps);
-		events.remove(0);
-		events.add(eventsNumber - 1, Next);
-		return Next;
+		simulation.getScheduler().removeEvent(currentEvent);
+		return false;
+	}
+
+	// ------------------------------------------------------------
+	// Index of the next instruction of the script that is not a
+	// delay (the delays before it are added to eps, the date of
+	// the event), the script is read in a loop
+	// ------------------------------------------------------------
+	private int nextInstruction() {
+		int k = script.target(cursor);
+		eps = eps + script.delay(cursor) + 1;
+		if (k >= 0)
+			cursor = (k + 1) % script.size();
+		return k;
+	}
+
+	// ------------------------------------------------------------
+	// A script with only delays ends like a break
+	// ------------------------------------------------------------
+	private boolean isBreak(int k) {
+		return (k < 0) || (script.getType(k) == Commands.COM_BREAK);
 	}
 
 	public Device getDevice() {
@@ -0,0 +1,79 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation2;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @version 1.0
+ *
+ *          Creates the threads of the device simulators. In the
+ *          VIRTUALTHREADMODE, a virtual thread is created for each device when
+ *          the JVM supports them (Java 21 and more), so that networks of
+ *          100k devices do not need 100k system threads. Otherwise (or in
+ *          the PARALLELMODE), a classical platform thread is created.
+ */
+public class DeviceThreadFactory implements ThreadFactory {
+
+	private static Object virtualBuilder = null;
+	private static Method unstarted = null;
+
+	static {
+		// Thread.ofVirtual() is called by reflection to keep the code
+		// compatible with the older versions of Java
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			virtualBuilder = ofVirtual.invoke(null);
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod(
+					"unstarted", Runnable.class);
+		} catch (Exception e) {
+			virtualBuilder = null;
+			unstarted = null;
+		}
+	}
+
+	private boolean virtual;
+
+	public DeviceThreadFactory(SimulationMode mode) {
+		virtual = (mode == SimulationMode.VIRTUALTHREADMODE)
+				&& isVirtualThreadSupported();
+	}
+
+	public static boolean isVirtualThreadSupported() {
+		return unstarted != null;
+	}
+
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		if (virtual) {
+			try {
+				return (Thread) unstarted.invoke(virtualBuilder, r);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return new Thread(r);
+	}
+}
@@ -31,6 +31,8 @@ public class Event implements Comparable<Event> {
 	private DeviceSimulator deviceSimulator = null;
 	private Device device = null;
 	private Simulation simulation = null;
+	private int calendarIndex = -1;
+	private long calendarSequence = 0;
 	
 	public Device getDevice() {
 		return device;
@@ -71,7 +73,7 @@ public class Event implements Comparable<Event> {
 		setEventType(eventtype);
 		setPowerRatio(powratio);
 		if (simulation != null) {
-			simulation.getScheduler().sort();
+			simulation.getScheduler().reschedule(this);
 		}
 	}
 
@@ -137,4 +139,22 @@ public class Event implements Comparable<Event> {
 		this.epsilon = epsilon;
 	}
 
+	// Position of the event in the calendar (used by the EventCalendar)
+	public int getCalendarIndex() {
+		return calendarIndex;
+	}
+
+	public void setCalendarIndex(int calendarIndex) {
+		this.calendarIndex = calendarIndex;
+	}
+
+	// Order of (re)scheduling, breaks the ties of compareTo
+	public long getCalendarSequence() {
+		return calendarSequence;
+	}
+
+	public void setCalendarSequence(long calendarSequence) {
+		this.calendarSequence = calendarSequence;
+	}
+
 }
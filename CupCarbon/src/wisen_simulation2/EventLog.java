@@ -0,0 +1,265 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import device.Device;
+
+/**
+ * @version 1.0
+ *
+ *          Log of the events of the simulation written by a background
+ *          thread. The simulation puts fixed-size records (time, device,
+ *          kind, message, date, epsilon) in a preallocated ring buffer and the
+ *          writer thread saves them by batches in a binary file. The text is
+ *          only created when the log is rendered (render), once the
+ *          simulation is finished.
+ *
+ *          There must be only one thread that calls log (the simulation
+ *          thread).
+ */
+public class EventLog implements Runnable {
+
+	public static final byte SEND = 0;
+	public static final byte RECEIVE = 1;
+
+	private static final int MAGIC = 0x4343454C;
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Waiting time of the writer when the ring is empty
+	private static final long WAIT = 1000000;
+
+	private String fileName;
+	private int capacity;
+	private int mask;
+
+	// The ring buffer (one array by field of the records)
+	private long[] times;
+	private long[] dates;
+	private int[] deviceIds;
+	private byte[] kinds;
+	private int[] messages;
+	private int[] epsilons;
+
+	// Number of records written by the simulation and saved by the writer
+	private volatile long written = 0;
+	private volatile long saved = 0;
+	private volatile boolean closed = false;
+	private Thread writer;
+	private DataOutputStream out;
+	private IOException error;
+
+	/**
+	 * @param fileName
+	 *            The binary file of the records
+	 */
+	public EventLog(String fileName) {
+		this(fileName, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param fileName
+	 *            The binary file of the records
+	 * @param capacity
+	 *            Number of records of the ring buffer (rounded to a power of
+	 *            2)
+	 */
+	public EventLog(String fileName, int capacity) {
+		this.fileName = fileName;
+		this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = this.capacity - 1;
+		times = new long[this.capacity];
+		dates = new long[this.capacity];
+		deviceIds = new int[this.capacity];
+		kinds = new byte[this.capacity];
+		messages = new int[this.capacity];
+		epsilons = new int[this.capacity];
+	}
+
+	/**
+	 * Create the file (with the names of the devices) and start the writer
+	 *
+	 * @param devices
+	 * @throws IOException
+	 */
+	public void open(List<Device> devices) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName), BUFFER_SIZE));
+		out.writeInt(MAGIC);
+		out.writeInt(devices.size());
+		for (Device device : devices) {
+			out.writeInt(device.getId());
+			out.writeUTF(String.valueOf(device.getUserId()));
+		}
+		writer = new Thread(this, "EventLog");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Add a record (waits if the ring buffer is full)
+	 *
+	 * @param time
+	 *            Time of the log (ns from the start of the simulation)
+	 * @param deviceId
+	 * @param kind
+	 *            SEND or RECEIVE
+	 * @param message
+	 * @param date
+	 *            Date of the event
+	 * @param epsilon
+	 */
+	public void log(long time, int deviceId, byte kind, int message,
+			long date, int epsilon) {
+		if (writer == null)
+			return;
+		long w = written;
+		while (w - saved >= capacity) {
+			// Full : the writer must save some records
+			LockSupport.unpark(writer);
+			Thread.yield();
+		}
+		int k = (int) (w & mask);
+		times[k] = time;
+		deviceIds[k] = deviceId;
+		kinds[k] = kind;
+		messages[k] = message;
+		dates[k] = date;
+		epsilons[k] = epsilon;
+		written = w + 1;
+	}
+
+	// ------------------------------------------------------------
+	// Writer : saves the records by batches
+	// ------------------------------------------------------------
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				// closed is read before written : the records logged before
+				// close are saved before the end
+				boolean end = closed;
+				long s = saved;
+				long w = written;
+				if (s == w) {
+					if (end)
+						break;
+					LockSupport.parkNanos(WAIT);
+					continue;
+				}
+				for (; s < w; s++) {
+					int k = (int) (s & mask);
+					out.writeLong(times[k]);
+					out.writeInt(deviceIds[k]);
+					out.writeByte(kinds[k]);
+					out.writeInt(messages[k]);
+					out.writeLong(dates[k]);
+					out.writeInt(epsilons[k]);
+				}
+				saved = w;
+			}
+		} catch (IOException e) {
+			error = e;
+			saved = Long.MAX_VALUE / 2;
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+				if (error == null)
+					error = e;
+			}
+		}
+	}
+
+	/**
+	 * Save the last records and close the file
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (writer == null)
+			return;
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Write the records of the file as text lines
+	 *
+	 * @param ps
+	 * @throws IOException
+	 */
+	public void render(PrintStream ps) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(fileName), BUFFER_SIZE));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(fileName + " is not an event log");
+			HashMap<Integer, String> userIds = new HashMap<Integer, String>();
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				int id = in.readInt();
+				userIds.put(id, in.readUTF());
+			}
+			while (true) {
+				long time;
+				try {
+					time = in.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+				int deviceId = in.readInt();
+				byte kind = in.readByte();
+				int message = in.readInt();
+				long date = in.readLong();
+				int epsilon = in.readInt();
+				ps.println(time + " " + deviceId + " " + userIds.get(deviceId)
+						+ ((kind == SEND) ? " send " : " recive ") + message
+						+ ", date : " + (date * 1000000) + " + eps " + epsilon);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+}
@@ -0,0 +1,291 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import device.Device;
+
+/**
+ * @version 1.0
+ *
+ *          Results of a simulation (battery level of each device at each
+ *          step) in a single memory-mapped file : one column by device and one
+ *          row by step. The rows are stored by blocks, and in a block the
+ *          values of a column are contiguous, so a column (the curve of a
+ *          device) is read with a few bulk copies.
+ *
+ *          File : magic number, version, number of columns, number of rows
+ *          by block, number of rows, position of the first block, then the id
+ *          and the name of the device of each column. Each block contains the
+ *          dates of its rows, then the values of the first column, of the
+ *          second column, ...
+ *
+ *          A store is created by create (writing) or open (reading).
+ */
+public class ResultStore {
+
+	public static final String EXTENSION = ".rst";
+
+	private static final int MAGIC = 0x43435254;
+	private static final int VERSION = 1;
+	// Maximum size of a block (bytes)
+	private static final int BLOCK_SIZE = 1 << 24;
+	private static final int MAX_BLOCK_ROWS = 1024;
+	private static final int ROWS_POSITION = 16;
+	private static final int HEADER_SIZE = 32;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private boolean readOnly;
+	private int nbColumns;
+	private int blockRows;
+	private long nbRows;
+	private long dataStart;
+	private int[] deviceIds;
+	private String[] userIds;
+	private MappedByteBuffer header;
+
+	// Writing : the block of the current row, reading : all the blocks
+	private List<MappedByteBuffer> blocks = new ArrayList<MappedByteBuffer>();
+	private MappedByteBuffer block;
+	private int row = -1;
+
+	private ResultStore() {
+	}
+
+	/**
+	 * Create a store with one column for each device
+	 *
+	 * @param fileName
+	 * @param devices
+	 * @return the store (for writing)
+	 * @throws IOException
+	 */
+	public static ResultStore create(String fileName, List<Device> devices)
+			throws IOException {
+		ResultStore store = new ResultStore();
+		store.nbColumns = devices.size();
+		store.blockRows = Math.max(1, Math.min(MAX_BLOCK_ROWS, BLOCK_SIZE
+				/ (8 * (1 + store.nbColumns))));
+		store.deviceIds = new int[store.nbColumns];
+		store.userIds = new String[store.nbColumns];
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(store.nbColumns);
+		out.writeInt(store.blockRows);
+		out.writeLong(0);
+		out.writeLong(0);
+		int c = 0;
+		for (Device device : devices) {
+			store.deviceIds[c] = device.getId();
+			store.userIds[c] = String.valueOf(device.getUserId());
+			out.writeInt(store.deviceIds[c]);
+			out.writeUTF(store.userIds[c]);
+			c++;
+		}
+		while (out.size() % 8 != 0)
+			out.writeByte(0);
+		out.close();
+		store.dataStart = bytes.size();
+
+		store.file = new RandomAccessFile(fileName, "rw");
+		store.file.setLength(0);
+		store.channel = store.file.getChannel();
+		store.header = store.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				store.dataStart);
+		store.header.put(bytes.toByteArray());
+		store.header.putLong(ROWS_POSITION + 8, store.dataStart);
+		return store;
+	}
+
+	/**
+	 * @param fileName
+	 * @return the store of the file (for reading)
+	 * @throws IOException
+	 */
+	public static ResultStore open(String fileName) throws IOException {
+		ResultStore store = new ResultStore();
+		store.readOnly = true;
+		store.file = new RandomAccessFile(fileName, "r");
+		store.channel = store.file.getChannel();
+		ByteBuffer fixed = (store.channel.size() < HEADER_SIZE) ? null
+				: store.channel.map(FileChannel.MapMode.READ_ONLY, 0,
+						HEADER_SIZE);
+		if (fixed == null || fixed.getInt(0) != MAGIC) {
+			store.close();
+			throw new IOException(fileName + " is not a result store");
+		}
+		if (fixed.getInt(4) != VERSION) {
+			store.close();
+			throw new IOException(fileName + " : unknown version");
+		}
+		store.nbColumns = fixed.getInt(8);
+		store.blockRows = fixed.getInt(12);
+		store.nbRows = fixed.getLong(ROWS_POSITION);
+		store.dataStart = fixed.getLong(ROWS_POSITION + 8);
+
+		// Ids and names of the devices
+		byte[] bytes = new byte[(int) (store.dataStart - HEADER_SIZE)];
+		store.channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+				bytes.length).get(bytes);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		store.deviceIds = new int[store.nbColumns];
+		store.userIds = new String[store.nbColumns];
+		for (int c = 0; c < store.nbColumns; c++) {
+			store.deviceIds[c] = in.readInt();
+			store.userIds[c] = in.readUTF();
+		}
+		long nbBlocks = (store.nbRows + store.blockRows - 1) / store.blockRows;
+		for (long b = 0; b < nbBlocks; b++)
+			store.blocks.add(store.channel.map(FileChannel.MapMode.READ_ONLY,
+					store.blockPosition(b), store.blockSize()));
+		return store;
+	}
+
+	/**
+	 * Add a row (a step)
+	 *
+	 * @param date
+	 * @throws IOException
+	 */
+	public void addRow(long date) throws IOException {
+		if (readOnly)
+			throw new IOException("The result store is read-only");
+		row = (int) (nbRows % blockRows);
+		if (row == 0)
+			block = channel.map(FileChannel.MapMode.READ_WRITE,
+					blockPosition(nbRows / blockRows), blockSize());
+		block.putLong(8 * row, date);
+		nbRows++;
+		header.putLong(ROWS_POSITION, nbRows);
+	}
+
+	/**
+	 * Value of a column in the last row
+	 *
+	 * @param column
+	 * @param value
+	 */
+	public void set(int column, double value) {
+		block.putDouble(8 * (blockRows * (1 + column) + row), value);
+	}
+
+	/**
+	 * Write the changes on the disk and close the file
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (file == null)
+			return;
+		if (!readOnly) {
+			header.force();
+			if (block != null)
+				block.force();
+		}
+		block = null;
+		header = null;
+		blocks.clear();
+		channel.close();
+		file.close();
+		file = null;
+	}
+
+	public int getNumberOfColumns() {
+		return nbColumns;
+	}
+
+	public long getNumberOfRows() {
+		return nbRows;
+	}
+
+	public int getDeviceId(int column) {
+		return deviceIds[column];
+	}
+
+	public String getUserId(int column) {
+		return userIds[column];
+	}
+
+	/**
+	 * @param userId
+	 * @return the column of a device (-1 if it does not exist)
+	 */
+	public int indexOf(String userId) {
+		for (int c = 0; c < nbColumns; c++)
+			if (userIds[c].equals(userId))
+				return c;
+		return -1;
+	}
+
+	/**
+	 * @return the dates of the rows (reading)
+	 */
+	public long[] getDates() {
+		long[] dates = new long[(int) nbRows];
+		for (int b = 0; b < blocks.size(); b++) {
+			ByteBuffer buffer = blocks.get(b).duplicate();
+			int from = b * blockRows;
+			int length = (int) Math.min(blockRows, nbRows - from);
+			buffer.asLongBuffer().get(dates, from, length);
+		}
+		return dates;
+	}
+
+	/**
+	 * @param column
+	 * @return the values of a column (reading)
+	 */
+	public double[] getColumn(int column) {
+		double[] values = new double[(int) nbRows];
+		for (int b = 0; b < blocks.size(); b++) {
+			DoubleBuffer buffer = blocks.get(b).duplicate().asDoubleBuffer();
+			int from = b * blockRows;
+			int length = (int) Math.min(blockRows, nbRows - from);
+			buffer.position(blockRows * (1 + column));
+			buffer.get(values, from, length);
+		}
+		return values;
+	}
+
+	private long blockSize() {
+		return 8L * blockRows * (1 + nbColumns);
+	}
+
+	private long blockPosition(long b) {
+		return dataStart + b * blockSize();
+	}
+}
@@ -21,13 +21,20 @@ package wisen_simulation2;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 
-import javax.swing.JOptionPane;
+import java.util.List;
+import java.util.Random;
 
 import project.Project;
+import radiomodule.LinkQualityTable;
+import simbox_simulation.SimulationListener;
+import synchronization.EventCalendarType;
 import synchronization.Scheduler;
 import synchronization.Semaphore;
+import battery.Battery;
+import battery.EnergyAccounting;
 import cupcarbon.MtSimulationWindow;
 import device.Device;
 import device.DeviceList;
@@ -43,13 +50,27 @@ public class Simulation implements Simulator_Interface, Runnable {
 	private long iStep = 0;
 	private Semaphore semaphore = null;
 	private Scheduler scheduler = null;
+	private EventCalendarType eventCalendarType = EventCalendarType.BINARY_HEAP;
 	private Thread thread = null;
 	private boolean more;
 	private String logFileName = "log";
 	private String simulationName = "Name";
-	private PrintStream logps;
+	private EventLog eventLog;
+	private ResultStore resultStore;
+	private boolean textLog = true;
 	private long startTime;
 	private long endTime;
+	private SimulationMode simulationMode = SimulationMode.PARALLELMODE;
+	private SimulationListener listener = MtSimulationWindow.LISTENER;
+	// The receivers of each device and the qualities of the links (updated
+	// when a device moves)
+	private LinkQualityTable links;
+	// Losses of the packets on the links of quality < 1
+	private Random random;
+	// Consumptions of the devices (applied to the batteries at each step)
+	private EnergyAccounting energy;
+	// Number of events executed
+	private long nbEvents = 0;
 
 	public Simulation(String name, String log) {
 		setSimulationName(name);
@@ -59,6 +80,13 @@ public class Simulation implements Simulator_Interface, Runnable {
 		setSimulationLogicDelay(defaulSimulationLogicDelay);
 	}
 
+	/**
+	 * @return the number of events executed
+	 */
+	public long getNbEvents() {
+		return nbEvents;
+	}
+
 	public long getStartTime() {
 		return startTime ;
 	}
@@ -67,6 +95,14 @@ public class Simulation implements Simulator_Interface, Runnable {
 		return scheduler ;
 	}
 	
+	public EventCalendarType getEventCalendarType() {
+		return eventCalendarType;
+	}
+
+	public void setEventCalendarType(EventCalendarType eventCalendarType) {
+		this.eventCalendarType = eventCalendarType;
+	}
+
 	public Semaphore getSemaphore() {
 		return semaphore ;
 	}
@@ -81,22 +117,37 @@ public class Simulation implements Simulator_Interface, Runnable {
 
 	@Override
 	public void initSimulation() {
-		scheduler = new Scheduler();
+		scheduler = new Scheduler(eventCalendarType);
 		semaphore = new Semaphore(1);
 		more = true;
+		nbEvents = 0;
+		links = new LinkQualityTable(DeviceList.getNodes());
+		random = new Random(0);
+		List<Device> nodes = DeviceList.getNodes();
+		Battery[] batteries = new Battery[nodes.size()];
+		for (int i = 0; i < batteries.length; i++)
+			batteries[i] = nodes.get(i).getBattery();
+		energy = new EnergyAccounting(batteries);
+		// One file for the results of all the devices
+		try {
+			resultStore = ResultStore.create(getResultFile(),
+					DeviceList.getNodes());
+		} catch (IOException e) {
+			resultStore = null;
+			e.printStackTrace();
+		}
 		for (Device device : DeviceList.getNodes()) {
 			device.initSimulator(this);
 			device.getSimulator().start();
 		}
 
+		// The events are saved in a binary file by a background thread
 		try {
-			logps = new PrintStream(new FileOutputStream(
-					Project.getLogFileFromName(Project
-							.getLogFileExtension(logFileName))));
-			logps.println("CupCarbon v. 1.0");
-			logps.println("Simulation name : " + simulationName);
-			logps.println("Events list [");
-		} catch (FileNotFoundException e) {
+			String logFile = getLogFile();
+			eventLog = new EventLog(logFile.substring(0, logFile.length() - 4)
+					+ ".evt");
+			eventLog.open(DeviceList.getNodes());
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 
@@ -113,69 +164,78 @@ public class Simulation implements Simulator_Interface, Runnable {
 
 	@Override
 	public void run() {
-		while (more) {
-			semaphore.P();
-			action();
+		if (simulationMode == SimulationMode.SEQUENTIALMODE) {
+			// One single event loop, no thread per device
+			while (more) {
+				action();
+			}
+		} else {
+			while (more) {
+				semaphore.P();
+				action();
+			}
 		}
 		endSimulation();
 	}
 
 	public void action() {
 		Event nextEvent = scheduler.getNextEvent();
+		long now = System.nanoTime() - startTime;
 
 		if ((nextEvent == null)
 				|| (nextEvent.getEventDate() > getSimulationDelay())
-				|| ((System.nanoTime() - startTime) > (getSimulationLogicDelay() * 1000000))) {
+				|| (now > (getSimulationLogicDelay() * 1000000))) {
 			if (nextEvent == null)
-				JOptionPane.showMessageDialog(null, "NextEvent Null");
+				listener.message("NextEvent Null");
+			else if (nextEvent.getEventDate() > getSimulationDelay())
+				listener.message("SimDelay -");
 
-			if (nextEvent.getEventDate() > getSimulationDelay())
-				JOptionPane.showMessageDialog(null, "SimDelay -");
-
-			if ((System.nanoTime() - startTime) > (getSimulationLogicDelay() * 1000000))
-				JOptionPane.showMessageDialog(null, "SimLogicDelay -");
+			if (now > (getSimulationLogicDelay() * 1000000))
+				listener.message("SimLogicDelay -");
 
 			more = false;
 		} else {
 
 			if ((nextEvent.getEventDate() / step) >= iStep) {
 				iStep++;
-
-				for (Device device : DeviceList.getNodes()) {
-					device.getSimulator().saveResult(step * iStep);
-				}
+				energy.flush();
+				saveResults(step * iStep);
 			}
 
-			nextEvent.getDevice().getBattery().setCapacity((long)(nextEvent.getDevice().getBattery().getCapacity() - (0.00000000008 / 100.) * nextEvent.getPowerRatio()));
-			//Battery btry1 = nextEvent.getDevice().getBattery();			
-			//btry1.setCapacity(btry1.getCapacity() - (0.00000000008 / 100.) * nextEvent.getPowerRatio());
+			nbEvents++;
+			// Consumption of the sender and of each receiver
+			long cost = energy.toFixed((0.00000000008 / 100.)
+					* nextEvent.getPowerRatio());
+			int sender = links.indexOf(nextEvent.getDevice());
+			energy.drain(sender, cost);
 			
-			logps.println((System.nanoTime() - startTime) + " "
-					+ nextEvent.getDevice().getId() + " "
-					+ nextEvent.getDevice().getUserId() + " send "
-					+ nextEvent.getMessage() + ", date : "
-					+ (nextEvent.getEventDate() * 1000000) + " + eps "
-					+ nextEvent.getEpsilon());
-
-			MtSimulationWindow.setState("Simulate (MT) ...");
-			for (Device device : DeviceList.getNodes()) {
-				if ((nextEvent.getDevice() != device) && (nextEvent.getDevice().radioDetect(device))) {
-					// cosommation des capteurs recepteurs
-					device.getBattery().setCapacity((long)(device.getBattery().getCapacity() - (0.00000000008 / 100.) * nextEvent.getPowerRatio()));
-					
-					//Battery btry2 = device.getBattery();
-					//btry2.setCapacity(btry2.getCapacity() - (0.00000000008 / 100.) * nextEvent.getPowerRatio());
-					
-					logps.println((System.nanoTime() - startTime) + " "
-							+ device.getId() + " " + device.getUserId() + " recive "
-							+ nextEvent.getMessage() + ", date : "
-							+ (nextEvent.getEventDate() * 1000000) + " + eps "
-							+ nextEvent.getEpsilon());
-				}
+			eventLog.log(now, nextEvent.getDevice().getId(), EventLog.SEND,
+					nextEvent.getMessage(), nextEvent.getEventDate(),
+					nextEvent.getEpsilon());
+
+			listener.stateChanged("Simulate (MT) ...");
+			// Only the neighbours of the sender receive (with the
+			// probability of the quality of the link)
+			int[] receivers = links.getLinks(sender);
+			float[] qualities = links.getQualities(sender);
+			for (int k = 0; k < receivers.length; k++) {
+				if (qualities[k] < 1 && random.nextFloat() >= qualities[k])
+					continue;
+				int j = receivers[k];
+				Device device = links.getDevice(j);
+				energy.drain(j, cost);
+				eventLog.log(now, device.getId(), EventLog.RECEIVE,
+						nextEvent.getMessage(), nextEvent.getEventDate(),
+						nextEvent.getEpsilon());
 			}
-			MtSimulationWindow.setState("End of Simulation (MT) ...");
+			listener.stateChanged("End of Simulation (MT) ...");
 			// nextEvent.getDevice().
-			nextEvent.getDevicesimulator().lock.V();
+			if (simulationMode == SimulationMode.SEQUENTIALMODE) {
+				if (!nextEvent.getDevicesimulator().resume())
+					System.out.println(" -> " + nextEvent.getDevice().getUserId());
+			} else {
+				nextEvent.getDevicesimulator().lock.V();
+			}
 		}
 	}
 
@@ -187,6 +247,16 @@ public class Simulation implements Simulator_Interface, Runnable {
 		thread.start();
 	}
 
+	/**
+	 * Wait for the end of the simulation (started by startSimulation)
+	 *
+	 * @throws InterruptedException
+	 */
+	public void waitForEnd() throws InterruptedException {
+		if (thread != null)
+			thread.join();
+	}
+
 	@SuppressWarnings("deprecation")
 	@Override
 	public void stopSimulation() {
@@ -200,22 +270,96 @@ public class Simulation implements Simulator_Interface, Runnable {
 	@Override
 	public void endSimulation() {
 		endTime = System.nanoTime();
-		logps.println("]");
-		logps.println();
-		logps.println("Duration :");
-		logps.println("Logic : " + (endTime - startTime) + " ns");
-		logps.println("End simulation");
-		logps.close();
-		JOptionPane.showMessageDialog(null, ""
-				+ (System.nanoTime() - startTime) + " - "
+		energy.flush();
+		try {
+			if (resultStore != null)
+				resultStore.close();
+			eventLog.close();
+			if (textLog)
+				writeTextLog();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		listener.message("" + (System.nanoTime() - startTime) + " - "
 				+ (getSimulationDelay() * 1000000));
-		JOptionPane.showMessageDialog(
-				null,
-				"Fin de simulation, Consultez le fichier log pour plus de datail\n Log :"
+		listener.message("Fin de simulation, Consultez le fichier log pour plus de datail\n Log :"
 						+ Project.getLogFileFromName(Project
 								.getLogFileExtension(logFileName)));
 	}
 
+	// ------------------------------------------------------------
+	// Render the binary event log in the text log file
+	// ------------------------------------------------------------
+	public void writeTextLog() throws IOException {
+		PrintStream logps = null;
+		try {
+			logps = new PrintStream(new FileOutputStream(getLogFile()));
+			logps.println("CupCarbon v. 1.0");
+			logps.println("Simulation name : " + simulationName);
+			logps.println("Events list [");
+			eventLog.render(logps);
+			logps.println("]");
+			logps.println();
+			logps.println("Duration :");
+			logps.println("Logic : " + (endTime - startTime) + " ns");
+			logps.println("End simulation");
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		} finally {
+			if (logps != null)
+				logps.close();
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Battery level of each device at a step
+	// ------------------------------------------------------------
+	private void saveResults(long date) {
+		if (resultStore == null)
+			return;
+		try {
+			resultStore.addRow(date);
+			int column = 0;
+			for (Device device : DeviceList.getNodes()) {
+				if (column == resultStore.getNumberOfColumns())
+					break;
+				resultStore.set(column++, device.getBatteryLevel());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public SimulationListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @param listener
+	 *            Receives the state of the simulation and the messages
+	 *            (MtSimulationWindow.LISTENER by default)
+	 */
+	public void setListener(SimulationListener listener) {
+		this.listener = listener;
+	}
+
+	public ResultStore getResultStore() {
+		return resultStore;
+	}
+
+	/**
+	 * @return the file of the results (ResultStore)
+	 */
+	public String getResultFile() {
+		return Project.getProjectResultsPath() + "/"
+				+ simulationName.replaceAll(" ", "_") + ResultStore.EXTENSION;
+	}
+
+	private String getLogFile() {
+		return Project.getLogFileFromName(Project
+				.getLogFileExtension(logFileName));
+	}
+
 	@Override
 	public void consumptionEnergy(Event event) {
 
@@ -249,6 +393,19 @@ public class Simulation implements Simulator_Interface, Runnable {
 		this.logFileName = logFileName;
 	}
 
+	public boolean isTextLog() {
+		return textLog;
+	}
+
+	/**
+	 * @param textLog
+	 *            If the text log is written at the end of the simulation
+	 *            (otherwise only the binary file is kept, see EventLog.render)
+	 */
+	public void setTextLog(boolean textLog) {
+		this.textLog = textLog;
+	}
+
 	public String getSimulationName() {
 		return simulationName;
 	}
@@ -290,11 +447,12 @@ public class Simulation implements Simulator_Interface, Runnable {
 
 	@Override
 	public void setSimulationMode(SimulationMode sMode) {
+		simulationMode = sMode;
 	}
 
 	@Override
 	public SimulationMode getSimulationMode() {
-		return null;
+		return simulationMode;
 	}
 
 }
@@ -21,5 +21,6 @@ package wisen_simulation2;
 
 public enum SimulationMode {
 	PARALLELMODE,
-	SEQUENTIALMODE
+	SEQUENTIALMODE,
+	VIRTUALTHREADMODE
 }
@@ -0,0 +1,154 @@
+/*----------------------------------------------------------------------------------------------------------------
+ * CupCarbon: OSM based Wireless Sensor Network design and simulation tool
+ * www.cupcarbon.com
+ * ----------------------------------------------------------------------------------------------------------------
+ * Copyright (C) 2013 Ahcene Bounceur
+ * ----------------------------------------------------------------------------------------------------------------
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *----------------------------------------------------------------------------------------------------------------*/
+
+package wisen_simulation2;
+
+import synchronization.Lock;
+import synchronization.Semaphore;
+
+/**
+ * @version 1.0
+ *
+ *          Scaling benchmark of the execution modes of the device simulators,
+ *          from 1k to 100k devices. Each device is a worker that reproduces
+ *          the handoff of DeviceSimulator.run() (lock.P(), resume,
+ *          semaphore.V()) and the simulation wakes the devices one after the
+ *          other as Simulation.run() does.
+ *
+ *          Arguments: [steps per device] [max number of platform threads]
+ */
+public class ThreadModeBenchmark {
+
+	private static final int[] SIZES = { 1000, 10000, 100000 };
+
+	private static int steps = 10;
+	private static int maxPlatformThreads = 10000;
+
+	// ------------------------------------------------------------
+	// A device worker
+	// ------------------------------------------------------------
+	static class Worker implements Runnable {
+		Lock lock = new Lock();
+		Semaphore semaphore;
+		long value = 0;
+		volatile boolean stopped = false;
+
+		Worker(Semaphore semaphore) {
+			this.semaphore = semaphore;
+		}
+
+		boolean resume() {
+			value++;
+			return value < steps;
+		}
+
+		@Override
+		public void run() {
+			boolean more = true;
+			while (more) {
+				lock.P();
+				if (stopped)
+					return;
+				more = resume();
+				semaphore.V();
+			}
+		}
+	}
+
+	// ------------------------------------------------------------
+	// Returns the duration in ms (-1 if the threads can't be created)
+	// ------------------------------------------------------------
+	public static long run(SimulationMode mode, int n) {
+		long start = System.nanoTime();
+		Semaphore semaphore = new Semaphore(1);
+		Worker[] workers = new Worker[n];
+		Thread[] threads = new Thread[n];
+		DeviceThreadFactory factory = new DeviceThreadFactory(mode);
+		int started = 0;
+		try {
+			for (int i = 0; i < n; i++) {
+				workers[i] = new Worker(semaphore);
+				if (mode != SimulationMode.SEQUENTIALMODE) {
+					threads[i] = factory.newThread(workers[i]);
+					threads[i].start();
+					started++;
+				}
+			}
+		} catch (OutOfMemoryError e) {
+			stop(workers, started);
+			return -1;
+		}
+		for (int s = 0; s < steps; s++) {
+			for (int i = 0; i < n; i++) {
+				if (mode == SimulationMode.SEQUENTIALMODE) {
+					workers[i].resume();
+				} else {
+					semaphore.P();
+					workers[i].lock.V();
+				}
+			}
+		}
+		if (mode != SimulationMode.SEQUENTIALMODE) {
+			semaphore.P();
+			for (int i = 0; i < n; i++) {
+				try {
+					threads[i].join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	// ------------------------------------------------------------
+	// Ends the threads already started (they wait on their lock)
+	// ------------------------------------------------------------
+	private static void stop(Worker[] workers, int started) {
+		for (int i = 0; i < started; i++) {
+			workers[i].stopped = true;
+			workers[i].lock.V();
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length > 0)
+			steps = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			maxPlatformThreads = Integer.parseInt(args[1]);
+		System.out.println("Virtual threads supported : "
+				+ DeviceThreadFactory.isVirtualThreadSupported());
+		System.out.println("Steps per device : " + steps);
+		System.out.println("Devices\tSequential\tParallel\tVirtual (ms)");
+		for (int n : SIZES) {
+			long seq = run(SimulationMode.SEQUENTIALMODE, n);
+			String par = "-";
+			if (n <= maxPlatformThreads) {
+				long t = run(SimulationMode.PARALLELMODE, n);
+				par = (t < 0) ? "failed" : "" + t;
+			}
+			String vir = "-";
+			if (DeviceThreadFactory.isVirtualThreadSupported()) {
+				long t = run(SimulationMode.VIRTUALTHREADMODE, n);
+				vir = (t < 0) ? "failed" : "" + t;
+			}
+			System.out.println(n + "\t" + seq + "\t" + par + "\t" + vir);
+		}
+	}
+}